@@ -27,6 +27,8 @@ public class RAssignmentCommand implements RCommand
 {
     private static final String R_ASSIGNEE_VALUE_EXPRESSION_SEPERATOR = " <- ";
     
+    private final String assigneeIdentifier;
+    
     private final String commandText;
     
     /**
@@ -41,12 +43,23 @@ public class RAssignmentCommand implements RCommand
             String assigneeIdentifier,
             String assignmentValueExpression)
     {
+        this.assigneeIdentifier = assigneeIdentifier;
         this.commandText =
             assigneeIdentifier +
             R_ASSIGNEE_VALUE_EXPRESSION_SEPERATOR +
             assignmentValueExpression;
     }
     
+    /**
+     * Getter for the assignee expression (the left hand side of the
+     * assignment)
+     * @return the assignee identifier
+     */
+    public String getAssigneeIdentifier()
+    {
+        return this.assigneeIdentifier;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r;
+
+/**
+ * An expression node for an R assignment ("assignee <- value")
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RAssignmentNode extends RExpressionNode
+{
+    /**
+     * what goes between the assignee and the value
+     */
+    private static final String R_ASSIGNEE_VALUE_EXPRESSION_SEPERATOR = " <- ";
+    
+    /**
+     * @see #getAssignee()
+     */
+    private final RExpressionNode assignee;
+    
+    /**
+     * @see #getValue()
+     */
+    private final RExpressionNode value;
+    
+    /**
+     * the hash code which we work out up front since the nodes are
+     * immutable
+     */
+    private final int hashCode;
+    
+    /**
+     * Constructor
+     * @param assignee
+     *          the left hand side of the assignment
+     * @param value
+     *          the right hand side of the assignment
+     */
+    public RAssignmentNode(RExpressionNode assignee, RExpressionNode value)
+    {
+        if(assignee == null || value == null)
+        {
+            throw new NullPointerException(
+                    "assignee and value must be non-null");
+        }
+        
+        this.assignee = assignee;
+        this.value = value;
+        this.hashCode = 31 * assignee.hashCode() + value.hashCode();
+    }
+    
+    /**
+     * Convenience constructor for assigning to an identifier
+     * @param assigneeIdentifier
+     *          the identifier to assign to
+     * @param value
+     *          the right hand side of the assignment
+     */
+    public RAssignmentNode(String assigneeIdentifier, RExpressionNode value)
+    {
+        this(new RIdentifierNode(assigneeIdentifier), value);
+    }
+    
+    /**
+     * Getter for the left hand side
+     * @return the assignee
+     */
+    public RExpressionNode getAssignee()
+    {
+        return this.assignee;
+    }
+    
+    /**
+     * Getter for the right hand side
+     * @return the value
+     */
+    public RExpressionNode getValue()
+    {
+        return this.value;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void render(StringBuilder buffer)
+    {
+        this.assignee.render(buffer);
+        buffer.append(R_ASSIGNEE_VALUE_EXPRESSION_SEPERATOR);
+        this.value.render(buffer);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int estimateRenderedLength()
+    {
+        return this.assignee.estimateRenderedLength() +
+               R_ASSIGNEE_VALUE_EXPRESSION_SEPERATOR.length() +
+               this.value.estimateRenderedLength();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other)
+    {
+        if(other == this)
+        {
+            return true;
+        }
+        else if(other instanceof RAssignmentNode)
+        {
+            RAssignmentNode otherAssignment = (RAssignmentNode)other;
+            return this.hashCode == otherAssignment.hashCode &&
+                   this.assignee.equals(otherAssignment.assignee) &&
+                   this.value.equals(otherAssignment.value);
+        }
+        else
+        {
+            return false;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return this.hashCode;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An expression node for an R function call
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RCallNode extends RExpressionNode
+{
+    private static final String R_PARAMETER_START = "(";
+    private static final String R_PARAMETER_END = ")";
+    private static final String R_PARAMETER_SEPERATOR = ", ";
+    private static final String R_PARAMETER_VALUE_SEPERATOR = "=";
+    
+    /**
+     * A (possibly named) argument to a call
+     */
+    public static class Argument
+    {
+        private final String name;
+        
+        private final RExpressionNode value;
+        
+        /**
+         * Constructor for an unnamed argument
+         * @param value
+         *          the argument value
+         */
+        public Argument(RExpressionNode value)
+        {
+            this(null, value);
+        }
+        
+        /**
+         * Constructor
+         * @param name
+         *          the argument name (null for unnamed)
+         * @param value
+         *          the argument value
+         */
+        public Argument(String name, RExpressionNode value)
+        {
+            if(value == null)
+            {
+                throw new NullPointerException("value must be non-null");
+            }
+            this.name = name;
+            this.value = value;
+        }
+        
+        /**
+         * Getter for the name
+         * @return the name (null if the argument is unnamed)
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+        
+        /**
+         * Getter for the value
+         * @return the value
+         */
+        public RExpressionNode getValue()
+        {
+            return this.value;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object other)
+        {
+            if(other instanceof Argument)
+            {
+                Argument otherArgument = (Argument)other;
+                return (this.name == null ?
+                        otherArgument.name == null :
+                        this.name.equals(otherArgument.name)) &&
+                       this.value.equals(otherArgument.value);
+            }
+            else
+            {
+                return false;
+            }
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return 31 * (this.name == null ? 0 : this.name.hashCode()) +
+                   this.value.hashCode();
+        }
+    }
+    
+    private final String functionName;
+    
+    private final List<Argument> arguments;
+    
+    private final int hashCode;
+    
+    /**
+     * Constructor
+     * @param functionName
+     *          the name of the function to call
+     * @param arguments
+     *          the arguments
+     */
+    public RCallNode(String functionName, Argument... arguments)
+    {
+        this(functionName, Arrays.asList(arguments));
+    }
+    
+    /**
+     * Constructor
+     * @param functionName
+     *          the name of the function to call (must be non-null)
+     * @param arguments
+     *          the arguments (copied, must be non-null)
+     */
+    public RCallNode(String functionName, List<Argument> arguments)
+    {
+        if(functionName == null || arguments == null)
+        {
+            throw new NullPointerException(
+                    "function name and arguments must be non-null");
+        }
+        
+        this.functionName = functionName;
+        this.arguments = Collections.unmodifiableList(
+                new ArrayList<Argument>(arguments));
+        this.hashCode = 31 * functionName.hashCode() + this.arguments.hashCode();
+    }
+    
+    /**
+     * Getter for the function name
+     * @return the function name
+     */
+    public String getFunctionName()
+    {
+        return this.functionName;
+    }
+    
+    /**
+     * Getter for the arguments
+     * @return the arguments (unmodifiable)
+     */
+    public List<Argument> getArguments()
+    {
+        return this.arguments;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void render(StringBuilder buffer)
+    {
+        buffer.append(this.functionName);
+        buffer.append(R_PARAMETER_START);
+        for(int i = 0; i < this.arguments.size(); i++)
+        {
+            if(i > 0)
+            {
+                buffer.append(R_PARAMETER_SEPERATOR);
+            }
+            
+            Argument currArgument = this.arguments.get(i);
+            if(currArgument.name != null)
+            {
+                buffer.append(currArgument.name);
+                buffer.append(R_PARAMETER_VALUE_SEPERATOR);
+            }
+            currArgument.value.render(buffer);
+        }
+        buffer.append(R_PARAMETER_END);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int estimateRenderedLength()
+    {
+        long length =
+            this.functionName.length() +
+            R_PARAMETER_START.length() +
+            R_PARAMETER_END.length();
+        for(int i = 0; i < this.arguments.size(); i++)
+        {
+            if(i > 0)
+            {
+                length += R_PARAMETER_SEPERATOR.length();
+            }
+            
+            Argument currArgument = this.arguments.get(i);
+            if(currArgument.name != null)
+            {
+                length +=
+                    currArgument.name.length() +
+                    R_PARAMETER_VALUE_SEPERATOR.length();
+            }
+            length += currArgument.value.estimateRenderedLength();
+        }
+        return (int)Math.min(length, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other)
+    {
+        if(other == this)
+        {
+            return true;
+        }
+        else if(other instanceof RCallNode)
+        {
+            RCallNode otherCall = (RCallNode)other;
+            return this.hashCode == otherCall.hashCode &&
+                   this.functionName.equals(otherCall.functionName) &&
+                   this.arguments.equals(otherCall.arguments);
+        }
+        else
+        {
+            return false;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return this.hashCode;
+    }
+}
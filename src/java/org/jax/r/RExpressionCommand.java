@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r;
+
+/**
+ * An R command backed by a structured {@link RExpressionNode}. The command
+ * text is only rendered the first time it's asked for. Equality and
+ * hashing are structural so these commands can be used as keys for
+ * caching results or for dropping duplicates.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RExpressionCommand implements RCommand
+{
+    private final RExpressionNode expression;
+    
+    private volatile String commandText = null;
+    
+    /**
+     * Constructor
+     * @param expression
+     *          the expression (must be non-null)
+     */
+    public RExpressionCommand(RExpressionNode expression)
+    {
+        if(expression == null)
+        {
+            throw new NullPointerException("expression must be non-null");
+        }
+        this.expression = expression;
+    }
+    
+    /**
+     * Getter for the expression
+     * @return the expression
+     */
+    public RExpressionNode getExpression()
+    {
+        return this.expression;
+    }
+    
+    /**
+     * Estimate the length of the command text without rendering it
+     * @return
+     *          the estimate
+     */
+    public int estimateCommandLength()
+    {
+        String text = this.commandText;
+        return text == null ? this.expression.estimateRenderedLength() : text.length();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String getCommandText()
+    {
+        // a race here just means rendering twice which is harmless
+        String text = this.commandText;
+        if(text == null)
+        {
+            text = this.expression.render();
+            this.commandText = text;
+        }
+        return text;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other)
+    {
+        return other instanceof RExpressionCommand &&
+               ((RExpressionCommand)other).expression.equals(this.expression);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return this.expression.hashCode();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return this.getCommandText();
+    }
+}
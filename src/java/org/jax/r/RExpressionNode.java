@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r;
+
+/**
+ * A node in a structured R expression. Unlike building command text with
+ * string concatenation, a tree of nodes keeps the structure of the
+ * expression around so that it can be compared, hashed and sized without
+ * rendering or parsing anything. Rendering to text only happens when it's
+ * asked for and all nodes of a tree render into the same buffer.
+ * Nodes are immutable.
+ * @see RExpressionCommand
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public abstract class RExpressionNode
+{
+    /**
+     * Append the R text for this expression to the given buffer
+     * @param buffer
+     *          the buffer to render into
+     */
+    public abstract void render(StringBuilder buffer);
+    
+    /**
+     * Estimate how many characters {@link #render(StringBuilder)} will
+     * append. This is good enough for sizing buffers and for deciding how
+     * to get a large command to R
+     * @return
+     *          the estimate
+     */
+    public abstract int estimateRenderedLength();
+    
+    /**
+     * Structural equality. Two nodes are equal if they're the same kind of
+     * node with equal children.
+     * @param other
+     *          the object to compare with
+     * @return
+     *          true if they're equal
+     */
+    @Override
+    public abstract boolean equals(Object other);
+    
+    /**
+     * Structural hash code consistent with {@link #equals(Object)}
+     * @return
+     *          the hash code
+     */
+    @Override
+    public abstract int hashCode();
+    
+    /**
+     * Render this expression to a new string
+     * @return
+     *          the R text
+     */
+    public String render()
+    {
+        StringBuilder buffer = new StringBuilder(this.estimateRenderedLength());
+        this.render(buffer);
+        return buffer.toString();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return this.render();
+    }
+}
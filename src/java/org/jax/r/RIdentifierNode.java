@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r;
+
+/**
+ * An expression node for an R identifier (or any other expression text
+ * that we want to pass through verbatim)
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RIdentifierNode extends RExpressionNode
+{
+    /**
+     * @see #getIdentifier()
+     */
+    private final String identifier;
+    
+    /**
+     * Constructor
+     * @param identifier
+     *          the identifier (must be non-null)
+     */
+    public RIdentifierNode(String identifier)
+    {
+        if(identifier == null)
+        {
+            throw new NullPointerException("identifier must be non-null");
+        }
+        this.identifier = identifier;
+    }
+    
+    /**
+     * Getter for the identifier
+     * @return the identifier
+     */
+    public String getIdentifier()
+    {
+        return this.identifier;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void render(StringBuilder buffer)
+    {
+        buffer.append(this.identifier);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int estimateRenderedLength()
+    {
+        return this.identifier.length();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other)
+    {
+        return other instanceof RIdentifierNode &&
+               ((RIdentifierNode)other).identifier.equals(this.identifier);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return this.identifier.hashCode();
+    }
+}
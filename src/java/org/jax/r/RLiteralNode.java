@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r;
+
+import java.util.Arrays;
+
+/**
+ * An expression node for a literal R vector. Single values are rendered
+ * as scalars and everything else as a "c(...)" vector using the same
+ * formatting as {@link RUtilities}.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RLiteralNode extends RExpressionNode
+{
+    /**
+     * The literal value types
+     */
+    public enum LiteralType
+    {
+        /**
+         * an R numeric vector
+         */
+        DOUBLE,
+        
+        /**
+         * an R numeric vector with whole number values
+         */
+        INTEGER,
+        
+        /**
+         * an R logical vector
+         */
+        LOGICAL,
+        
+        /**
+         * an R character vector
+         */
+        CHARACTER
+    }
+    
+    /**
+     * the R token for a character NA. we need the typed NA for scalars
+     * since a plain NA is logical
+     */
+    private static final String R_NA_CHARACTER = "NA_character_";
+    
+    /**
+     * @see #getLiteralType()
+     */
+    private final LiteralType literalType;
+    
+    /**
+     * the values if this is a {@link LiteralType#DOUBLE} literal
+     */
+    private final double[] doubleValues;
+    
+    /**
+     * the values if this is a {@link LiteralType#INTEGER} literal
+     */
+    private final int[] intValues;
+    
+    /**
+     * the values if this is a {@link LiteralType#LOGICAL} literal
+     */
+    private final boolean[] booleanValues;
+    
+    /**
+     * the values if this is a {@link LiteralType#CHARACTER} literal
+     */
+    private final String[] stringValues;
+    
+    /**
+     * the hash code which we work out up front since literals can be large
+     */
+    private final int hashCode;
+    
+    /**
+     * Constructor for a numeric literal
+     * @param values
+     *          the values (copied)
+     */
+    public RLiteralNode(double... values)
+    {
+        this(LiteralType.DOUBLE, values.clone(), null, null, null);
+    }
+    
+    /**
+     * Constructor for an integer literal
+     * @param values
+     *          the values (copied)
+     */
+    public RLiteralNode(int... values)
+    {
+        this(LiteralType.INTEGER, null, values.clone(), null, null);
+    }
+    
+    /**
+     * Constructor for a logical literal
+     * @param values
+     *          the values (copied)
+     */
+    public RLiteralNode(boolean... values)
+    {
+        this(LiteralType.LOGICAL, null, null, values.clone(), null);
+    }
+    
+    /**
+     * Constructor for a character literal
+     * @param values
+     *          the raw java strings (copied). Use null for NA
+     */
+    public RLiteralNode(String... values)
+    {
+        this(LiteralType.CHARACTER, null, null, null, values.clone());
+    }
+    
+    /**
+     * Private constructor that all of the public constructors delegate to
+     */
+    private RLiteralNode(
+            LiteralType literalType,
+            double[] doubleValues,
+            int[] intValues,
+            boolean[] booleanValues,
+            String[] stringValues)
+    {
+        this.literalType = literalType;
+        this.doubleValues = doubleValues;
+        this.intValues = intValues;
+        this.booleanValues = booleanValues;
+        this.stringValues = stringValues;
+        
+        int valuesHash;
+        switch(literalType)
+        {
+            case DOUBLE: valuesHash = RLiteralNode.rawBitsHashCode(doubleValues); break;
+            case INTEGER: valuesHash = Arrays.hashCode(intValues); break;
+            case LOGICAL: valuesHash = Arrays.hashCode(booleanValues); break;
+            default: valuesHash = Arrays.hashCode(stringValues); break;
+        }
+        this.hashCode = 31 * literalType.hashCode() + valuesHash;
+    }
+    
+    /**
+     * Getter for the literal type
+     * @return the literal type
+     */
+    public LiteralType getLiteralType()
+    {
+        return this.literalType;
+    }
+    
+    /**
+     * Get the number of values in this literal
+     * @return
+     *          the length
+     */
+    public int getLength()
+    {
+        switch(this.literalType)
+        {
+            case DOUBLE: return this.doubleValues.length;
+            case INTEGER: return this.intValues.length;
+            case LOGICAL: return this.booleanValues.length;
+            default: return this.stringValues.length;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void render(StringBuilder buffer)
+    {
+        RVectorLiteralBuilder builder = new RVectorLiteralBuilder(buffer);
+        if(this.getLength() == 1)
+        {
+            switch(this.literalType)
+            {
+                case DOUBLE:
+                    builder.appendDouble(this.doubleValues[0]);
+                    break;
+                case INTEGER:
+                    buffer.append(this.intValues[0]);
+                    break;
+                case LOGICAL:
+                    buffer.append(RUtilities.javaBooleanToRBoolean(
+                            this.booleanValues[0]));
+                    break;
+                default:
+                    if(this.stringValues[0] == null)
+                    {
+                        buffer.append(R_NA_CHARACTER);
+                    }
+                    else
+                    {
+                        builder.appendString(this.stringValues[0]);
+                    }
+                    break;
+            }
+        }
+        else
+        {
+            switch(this.literalType)
+            {
+                case DOUBLE:
+                    builder.appendDoubleVector(this.doubleValues);
+                    break;
+                case INTEGER:
+                    builder.appendIntVector(this.intValues);
+                    break;
+                case LOGICAL:
+                    builder.appendBooleanVector(this.booleanValues);
+                    break;
+                default:
+                    builder.appendStringVector(this.stringValues);
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int estimateRenderedLength()
+    {
+        long estimate;
+        switch(this.literalType)
+        {
+            case DOUBLE:
+                estimate = RTransferPlanner.estimateLiteralLength(
+                        this.doubleValues);
+                break;
+            case INTEGER:
+                estimate = RTransferPlanner.estimateLiteralLength(
+                        this.intValues);
+                break;
+            case LOGICAL:
+                estimate = RTransferPlanner.estimateLiteralLength(
+                        this.booleanValues);
+                break;
+            default:
+                estimate = RTransferPlanner.estimateLiteralLength(
+                        this.stringValues);
+                break;
+        }
+        return (int)Math.min(estimate, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other)
+    {
+        if(other == this)
+        {
+            return true;
+        }
+        else if(other instanceof RLiteralNode)
+        {
+            RLiteralNode otherLiteral = (RLiteralNode)other;
+            return this.hashCode == otherLiteral.hashCode &&
+                   this.literalType == otherLiteral.literalType &&
+                   RLiteralNode.rawBitsEqual(this.doubleValues, otherLiteral.doubleValues) &&
+                   Arrays.equals(this.intValues, otherLiteral.intValues) &&
+                   Arrays.equals(this.booleanValues, otherLiteral.booleanValues) &&
+                   Arrays.equals(this.stringValues, otherLiteral.stringValues);
+        }
+        else
+        {
+            return false;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return this.hashCode;
+    }
+    
+    /**
+     * Compare double arrays bit for bit. Unlike
+     * {@link Arrays#equals(double[], double[])} this tells R's NA apart
+     * from other NaN values since they render differently
+     * @param values1
+     *          the 1st array (can be null)
+     * @param values2
+     *          the 2nd array (can be null)
+     * @return
+     *          true if the arrays are equal
+     */
+    private static boolean rawBitsEqual(double[] values1, double[] values2)
+    {
+        if(values1 == values2)
+        {
+            return true;
+        }
+        else if(values1 == null || values2 == null ||
+                values1.length != values2.length)
+        {
+            return false;
+        }
+        else
+        {
+            for(int i = 0; i < values1.length; i++)
+            {
+                if(Double.doubleToRawLongBits(values1[i]) !=
+                   Double.doubleToRawLongBits(values2[i]))
+                {
+                    return false;
+                }
+            }
+            
+            return true;
+        }
+    }
+    
+    /**
+     * Hash the given array consistently with
+     * {@link #rawBitsEqual(double[], double[])}
+     * @param values
+     *          the array (can be null)
+     * @return
+     *          the hash code
+     */
+    private static int rawBitsHashCode(double[] values)
+    {
+        if(values == null)
+        {
+            return 0;
+        }
+        
+        int hash = 1;
+        for(double value: values)
+        {
+            long bits = Double.doubleToRawLongBits(value);
+            hash = 31 * hash + (int)(bits ^ (bits >>> 32));
+        }
+        
+        return hash;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r;
+
+/**
+ * Decides how a block of data should be moved into R based on how big it
+ * is. Small payloads are cheapest to send as literal command text (see
+ * {@link RUtilities}) since that needs no extra round trips and shows up
+ * in the command history as is. Once a literal gets long enough the cost
+ * of formatting and then having R parse it dominates and it's better to
+ * transfer the values in binary form and refer to them by name.
+ * <p>
+ * The thresholds are in estimated bytes and can be tuned per planner. The
+ * defaults are conservative starting points: R's parser slows down
+ * noticeably somewhere in the tens of kilobytes of command text and a
+ * memory mapped file only pays for its setup once payloads reach the
+ * megabytes.
+ * </p>
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RTransferPlanner
+{
+    /**
+     * The ways that we know how to move data into R
+     */
+    public enum TransferPath
+    {
+        /**
+         * build an R literal and put it in the command text
+         */
+        INLINE_LITERAL,
+        
+        /**
+         * assign the values to a variable directly through the R interface
+         */
+        DIRECT_ASSIGNMENT,
+        
+        /**
+         * write the values to a binary file and have R read them in
+         */
+        FILE_TRANSFER
+    }
+    
+    /**
+     * the default for {@link #getInlineLiteralThreshold()}
+     */
+    public static final long DEFAULT_INLINE_LITERAL_THRESHOLD = 16 * 1024;
+    
+    /**
+     * the default for {@link #getFileTransferThreshold()}
+     */
+    public static final long DEFAULT_FILE_TRANSFER_THRESHOLD = 8 * 1024 * 1024;
+    
+    /**
+     * the estimated literal length of a double including the separator
+     */
+    private static final int ESTIMATED_DOUBLE_LITERAL_LENGTH = 22;
+    
+    /**
+     * the estimated literal length of an int including the separator
+     */
+    private static final int ESTIMATED_INT_LITERAL_LENGTH = 8;
+    
+    /**
+     * the estimated literal length of a logical including the separator
+     */
+    private static final int ESTIMATED_BOOLEAN_LITERAL_LENGTH = 7;
+    
+    /**
+     * the quotes and separator around each string
+     */
+    private static final int STRING_LITERAL_OVERHEAD = 4;
+    
+    /**
+     * the length of the NA token that null strings are written as
+     * (including the separator)
+     */
+    private static final int NA_STRING_LITERAL_LENGTH = 4;
+    
+    /**
+     * the "c(" and ")" around each vector
+     */
+    private static final int VECTOR_LITERAL_OVERHEAD = 3;
+    
+    private static final RTransferPlanner DEFAULT_PLANNER =
+        new RTransferPlanner();
+    
+    private volatile long inlineLiteralThreshold =
+        DEFAULT_INLINE_LITERAL_THRESHOLD;
+    
+    private volatile long fileTransferThreshold =
+        DEFAULT_FILE_TRANSFER_THRESHOLD;
+    
+    /**
+     * Get the shared planner
+     * @return
+     *          the default planner
+     */
+    public static RTransferPlanner getDefaultPlanner()
+    {
+        return DEFAULT_PLANNER;
+    }
+    
+    /**
+     * Getter for the estimated literal size (in bytes of command text) up
+     * to which we'll send data inline
+     * @return the threshold
+     */
+    public long getInlineLiteralThreshold()
+    {
+        return this.inlineLiteralThreshold;
+    }
+    
+    /**
+     * Setter for the inline literal threshold
+     * @param inlineLiteralThreshold the threshold to set
+     */
+    public void setInlineLiteralThreshold(long inlineLiteralThreshold)
+    {
+        this.inlineLiteralThreshold = inlineLiteralThreshold;
+    }
+    
+    /**
+     * Getter for the estimated binary payload size (in bytes) above which
+     * we go through a file rather than a direct assignment
+     * @return the threshold
+     */
+    public long getFileTransferThreshold()
+    {
+        return this.fileTransferThreshold;
+    }
+    
+    /**
+     * Setter for the file transfer threshold
+     * @param fileTransferThreshold the threshold to set
+     */
+    public void setFileTransferThreshold(long fileTransferThreshold)
+    {
+        this.fileTransferThreshold = fileTransferThreshold;
+    }
+    
+    /**
+     * Estimate the length of the literal that
+     * {@link RUtilities#doubleArrayToRVector(double[])} would build
+     * @param values
+     *          the values
+     * @return
+     *          the estimate
+     */
+    public static long estimateLiteralLength(double[] values)
+    {
+        return VECTOR_LITERAL_OVERHEAD +
+               (long)values.length * ESTIMATED_DOUBLE_LITERAL_LENGTH;
+    }
+    
+    /**
+     * Estimate the length of the literal that
+     * {@link RUtilities#intArrayToRVector(int[])} would build
+     * @param values
+     *          the values
+     * @return
+     *          the estimate
+     */
+    public static long estimateLiteralLength(int[] values)
+    {
+        return VECTOR_LITERAL_OVERHEAD +
+               (long)values.length * ESTIMATED_INT_LITERAL_LENGTH;
+    }
+    
+    /**
+     * Estimate the length of the literal that
+     * {@link RUtilities#booleanArrayToRVector(boolean[])} would build
+     * @param values
+     *          the values
+     * @return
+     *          the estimate
+     */
+    public static long estimateLiteralLength(boolean[] values)
+    {
+        return VECTOR_LITERAL_OVERHEAD +
+               (long)values.length * ESTIMATED_BOOLEAN_LITERAL_LENGTH;
+    }
+    
+    /**
+     * Estimate the length of the literal that
+     * {@link RUtilities#stringArrayToRVector(String[])} would build
+     * @param values
+     *          the values (null for NA)
+     * @return
+     *          the estimate
+     */
+    public static long estimateLiteralLength(String[] values)
+    {
+        long length = VECTOR_LITERAL_OVERHEAD;
+        for(String currValue: values)
+        {
+            if(currValue == null)
+            {
+                length += NA_STRING_LITERAL_LENGTH;
+            }
+            else
+            {
+                length += currValue.length() + STRING_LITERAL_OVERHEAD;
+            }
+        }
+        return length;
+    }
+    
+    /**
+     * Plan the transfer of the given values
+     * @param values
+     *          the values
+     * @return
+     *          the path to use
+     */
+    public TransferPath planTransfer(double[] values)
+    {
+        return this.planTransfer(
+                estimateLiteralLength(values),
+                (long)values.length * 8L,
+                true);
+    }
+    
+    /**
+     * Plan the transfer of the given values
+     * @param values
+     *          the values
+     * @return
+     *          the path to use
+     */
+    public TransferPath planTransfer(int[] values)
+    {
+        return this.planTransfer(
+                estimateLiteralLength(values),
+                (long)values.length * 4L,
+                true);
+    }
+    
+    /**
+     * Plan the transfer of the given values
+     * @param values
+     *          the values
+     * @return
+     *          the path to use
+     */
+    public TransferPath planTransfer(boolean[] values)
+    {
+        // logicals are transferred as 4 byte ints
+        return this.planTransfer(
+                estimateLiteralLength(values),
+                (long)values.length * 4L,
+                true);
+    }
+    
+    /**
+     * Plan the transfer of the given values. Strings never go through a
+     * file
+     * @param values
+     *          the values
+     * @return
+     *          the path to use
+     */
+    public TransferPath planTransfer(String[] values)
+    {
+        long literalLength = estimateLiteralLength(values);
+        return this.planTransfer(literalLength, literalLength, false);
+    }
+    
+    /**
+     * Plan a transfer given the size estimates
+     * @param literalLength
+     *          the estimated literal length
+     * @param binaryLength
+     *          the estimated binary length
+     * @param fileTransferSupported
+     *          true if the value type can go through a file
+     * @return
+     *          the path
+     */
+    private TransferPath planTransfer(
+            long literalLength,
+            long binaryLength,
+            boolean fileTransferSupported)
+    {
+        if(literalLength <= this.inlineLiteralThreshold)
+        {
+            return TransferPath.INLINE_LITERAL;
+        }
+        else if(fileTransferSupported &&
+                binaryLength > this.fileTransferThreshold)
+        {
+            return TransferPath.FILE_TRANSFER;
+        }
+        else
+        {
+            return TransferPath.DIRECT_ASSIGNMENT;
+        }
+    }
+}
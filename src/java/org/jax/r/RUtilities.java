@@ -35,6 +35,11 @@ public class RUtilities
     private static final String R_TRUE = "TRUE";
     private static final String R_FALSE = "FALSE";
     
+    /**
+     * the longest a shortest round trip double string can be
+     */
+    private static final int MAX_DOUBLE_STRING_LENGTH = 24;
+    
     private static final String[] RESERVED_R_IDENTIFIERS = new String [] {
         "if",
         "else",
@@ -130,6 +135,28 @@ public class RUtilities
         return rExpressionToIndex + "[" + (zeroBasedRowIndex + 1) + ",]";
     }
     
+    /**
+     * Create an expression that indexes a range of rows from the given
+     * R expression. The result is always 2 dimensional (drop=FALSE)
+     * @param rExpressionToIndex
+     *          the R expression
+     * @param zeroBasedStartRowIndex
+     *          the 1st row in the range (inclusive)
+     * @param zeroBasedEndRowIndex
+     *          the end of the range (exclusive)
+     * @return
+     *          the index expression
+     */
+    public static String rowRangeIndexExpression(
+            String rExpressionToIndex,
+            int zeroBasedStartRowIndex,
+            int zeroBasedEndRowIndex)
+    {
+        // R wants 1 based inclusive indexes
+        return rExpressionToIndex + "[" + (zeroBasedStartRowIndex + 1) + ":" +
+               zeroBasedEndRowIndex + ", , drop=FALSE]";
+    }
+    
     /**
      * Convert the given double array into an R vector string
      * @param doubleArray
@@ -139,18 +166,13 @@ public class RUtilities
      */
     public static String doubleArrayToRVector(double[] doubleArray)
     {
-        String[] rValueArray = new String[doubleArray.length];
-        
-        for(int i = 0; i < doubleArray.length; i++)
-        {
-            rValueArray[i] = RUtilities.javaDoubleToRDouble(doubleArray[i]);
-        }
-        
-        return RUtilities.objectArrayToRVector(rValueArray);
+        return new RVectorLiteralBuilder().appendDoubleVector(
+                doubleArray).toString();
     }
     
     /**
-     * Convert the given java double to an R double string
+     * Convert the given java double to an R double string. NA, NaN,
+     * Inf and -Inf are converted to the matching R tokens
      * @param javaDouble
      *          the java double to convert
      * @return
@@ -158,14 +180,8 @@ public class RUtilities
      */
     public static String javaDoubleToRDouble(double javaDouble)
     {
-        if(javaDouble == Double.POSITIVE_INFINITY)
-        {
-            return "Inf";
-        }
-        else
-        {
-            return Double.toString(javaDouble);
-        }
+        return new RVectorLiteralBuilder(
+                MAX_DOUBLE_STRING_LENGTH).appendDouble(javaDouble).toString();
     }
 
     /**
@@ -177,15 +193,8 @@ public class RUtilities
      */
     public static String intArrayToRVector(int[] intArray)
     {
-        String[] rValueArray = new String[intArray.length];
-        
-        for(int i = 0; i < intArray.length; i++)
-        {
-            rValueArray[i] =
-                RUtilities.javaIntToRInt(intArray[i]);
-        }
-        
-        return RUtilities.objectArrayToRVector(rValueArray);
+        return new RVectorLiteralBuilder().appendIntVector(
+                intArray).toString();
     }
 
     /**
@@ -222,15 +231,8 @@ public class RUtilities
      */
     public static String stringArrayToRVector(String[] stringArray)
     {
-        String[] rStringArray = new String[stringArray.length];
-        
-        for(int i = 0; i < stringArray.length; i++)
-        {
-            rStringArray[i] =
-                RUtilities.javaStringToRString(stringArray[i]);
-        }
-        
-        return RUtilities.objectArrayToRVector(rStringArray);
+        return new RVectorLiteralBuilder().appendStringVector(
+                stringArray).toString();
     }
 
     /**
@@ -257,15 +259,8 @@ public class RUtilities
      */
     public static String booleanArrayToRVector(boolean[] booleanArray)
     {
-        String[] rValueArray = new String[booleanArray.length];
-        
-        for(int i = 0; i < booleanArray.length; i++)
-        {
-            rValueArray[i] =
-                RUtilities.javaBooleanToRBoolean(booleanArray[i]);
-        }
-        
-        return RUtilities.objectArrayToRVector(rValueArray);
+        return new RVectorLiteralBuilder().appendBooleanVector(
+                booleanArray).toString();
     }
 
     /**
@@ -292,7 +287,7 @@ public class RUtilities
      */
     public static String objectArrayToRVector(Object[] rValues)
     {
-        StringBuffer sb = new StringBuffer(R_VECTOR_START);
+        StringBuilder sb = new StringBuilder(R_VECTOR_START);
         
         if(rValues.length > 0)
         {
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r;
+
+/**
+ * Builds R vector literals (eg. "c(1, 2, 3)") by appending the values
+ * straight into a {@link StringBuilder}. Unlike building a String for each
+ * element and then joining them this doesn't allocate anything per element
+ * and the buffer is pre-sized from the array length. A builder can be
+ * reused by calling {@link #reset()} which keeps the buffer's capacity.
+ * Builders are not thread safe.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RVectorLiteralBuilder
+{
+    private static final String R_VECTOR_START = "c(";
+    private static final char R_VECTOR_END = ')';
+    private static final String R_VECTOR_ELEMENT_SEPERATOR = ", ";
+    private static final char R_STRING_QUOTE = '"';
+    private static final char R_STRING_ESCAPE = '\\';
+    private static final String R_TRUE = "TRUE";
+    private static final String R_FALSE = "FALSE";
+    private static final String R_POSITIVE_INFINITY = "Inf";
+    private static final String R_NEGATIVE_INFINITY = "-Inf";
+    private static final String R_NAN = "NaN";
+    private static final String R_NA = "NA";
+    private static final String R_NA_REAL = "NA_real_";
+    
+    /**
+     * R's NA_real_ is a NaN whose low word is 1954
+     */
+    private static final int R_NA_PAYLOAD = 1954;
+    
+    /**
+     * {@link Double#toString(double)} switches to scientific notation
+     * at 10^7
+     */
+    private static final int MAX_PLAIN_WHOLE_DOUBLE = 10000000;
+    private static final String WHOLE_DOUBLE_FRACTION = ".0";
+    
+    /**
+     * rough per element size estimates (including the separator) that we
+     * use for pre-sizing the buffer
+     */
+    private static final int ESTIMATED_DOUBLE_LENGTH = 22;
+    private static final int ESTIMATED_INT_LENGTH = 8;
+    private static final int ESTIMATED_BOOLEAN_LENGTH = 7;
+    private static final int ESTIMATED_STRING_OVERHEAD = 4;
+    
+    /**
+     * the buffer that we're building into
+     */
+    private final StringBuilder buffer;
+    
+    /**
+     * Constructor
+     */
+    public RVectorLiteralBuilder()
+    {
+        this.buffer = new StringBuilder();
+    }
+    
+    /**
+     * Constructor
+     * @param initialCapacity
+     *          the initial buffer capacity
+     */
+    public RVectorLiteralBuilder(int initialCapacity)
+    {
+        this.buffer = new StringBuilder(initialCapacity);
+    }
+    
+    /**
+     * Constructor for a builder that appends to an existing buffer
+     * @param buffer
+     *          the buffer to append to
+     */
+    public RVectorLiteralBuilder(StringBuilder buffer)
+    {
+        this.buffer = buffer;
+    }
+    
+    /**
+     * Clear out the contents so that the builder can be reused. The buffer
+     * capacity is kept.
+     * @return
+     *          this builder
+     */
+    public RVectorLiteralBuilder reset()
+    {
+        this.buffer.setLength(0);
+        return this;
+    }
+    
+    /**
+     * Getter for the buffer that we're writing to. This is handy if you
+     * want to keep appending to the same command text.
+     * @return the buffer
+     */
+    public StringBuilder getBuffer()
+    {
+        return this.buffer;
+    }
+    
+    /**
+     * Get the text that has been built so far
+     * @return
+     *          the text
+     */
+    @Override
+    public String toString()
+    {
+        return this.buffer.toString();
+    }
+    
+    /**
+     * Append a numeric vector literal
+     * @param doubleArray
+     *          the values
+     * @return
+     *          this builder
+     */
+    public RVectorLiteralBuilder appendDoubleVector(double[] doubleArray)
+    {
+        this.buffer.ensureCapacity(
+                this.buffer.length() +
+                R_VECTOR_START.length() + 1 +
+                doubleArray.length * ESTIMATED_DOUBLE_LENGTH);
+        this.buffer.append(R_VECTOR_START);
+        for(int i = 0; i < doubleArray.length; i++)
+        {
+            if(i > 0)
+            {
+                this.buffer.append(R_VECTOR_ELEMENT_SEPERATOR);
+            }
+            this.appendDouble(doubleArray[i]);
+        }
+        this.buffer.append(R_VECTOR_END);
+        
+        return this;
+    }
+    
+    /**
+     * Append a single R double value. NA, NaN and the infinities are
+     * written using R's tokens (NA is written as NA_real_ so that a vector
+     * of NA's stays numeric). Doubles holding small whole numbers (the
+     * common case for things like counts and indices) are written
+     * digit by digit without going through {@link Double#toString(double)}
+     * and everything else goes through {@link StringBuilder#append(double)}.
+     * Either way the text is identical to what {@link Double#toString(double)}
+     * would give for finite values, which always reads back as the same
+     * double (though on older runtimes it isn't always the shortest such
+     * string).
+     * @param javaDouble
+     *          the value
+     * @return
+     *          this builder
+     */
+    public RVectorLiteralBuilder appendDouble(double javaDouble)
+    {
+        if(javaDouble != javaDouble)
+        {
+            // NaN or NA. R tells them apart by the NaN payload
+            long bits = Double.doubleToRawLongBits(javaDouble);
+            if((int)bits == R_NA_PAYLOAD)
+            {
+                this.buffer.append(R_NA_REAL);
+            }
+            else
+            {
+                this.buffer.append(R_NAN);
+            }
+        }
+        else if(javaDouble == Double.POSITIVE_INFINITY)
+        {
+            this.buffer.append(R_POSITIVE_INFINITY);
+        }
+        else if(javaDouble == Double.NEGATIVE_INFINITY)
+        {
+            this.buffer.append(R_NEGATIVE_INFINITY);
+        }
+        else
+        {
+            int wholeValue = (int)javaDouble;
+            if(wholeValue == javaDouble &&
+               wholeValue > -MAX_PLAIN_WHOLE_DOUBLE &&
+               wholeValue < MAX_PLAIN_WHOLE_DOUBLE &&
+               (wholeValue != 0 || Double.doubleToRawLongBits(javaDouble) == 0L))
+            {
+                // this matches Double.toString which uses plain notation
+                // below 10^7 and always includes a fraction
+                this.buffer.append(wholeValue).append(WHOLE_DOUBLE_FRACTION);
+            }
+            else
+            {
+                this.buffer.append(javaDouble);
+            }
+        }
+        
+        return this;
+    }
+    
+    /**
+     * Append an integer vector literal
+     * @param intArray
+     *          the values
+     * @return
+     *          this builder
+     */
+    public RVectorLiteralBuilder appendIntVector(int[] intArray)
+    {
+        this.buffer.ensureCapacity(
+                this.buffer.length() +
+                R_VECTOR_START.length() + 1 +
+                intArray.length * ESTIMATED_INT_LENGTH);
+        this.buffer.append(R_VECTOR_START);
+        for(int i = 0; i < intArray.length; i++)
+        {
+            if(i > 0)
+            {
+                this.buffer.append(R_VECTOR_ELEMENT_SEPERATOR);
+            }
+            this.buffer.append(intArray[i]);
+        }
+        this.buffer.append(R_VECTOR_END);
+        
+        return this;
+    }
+    
+    /**
+     * Append a logical vector literal
+     * @param booleanArray
+     *          the values
+     * @return
+     *          this builder
+     */
+    public RVectorLiteralBuilder appendBooleanVector(boolean[] booleanArray)
+    {
+        this.buffer.ensureCapacity(
+                this.buffer.length() +
+                R_VECTOR_START.length() + 1 +
+                booleanArray.length * ESTIMATED_BOOLEAN_LENGTH);
+        this.buffer.append(R_VECTOR_START);
+        for(int i = 0; i < booleanArray.length; i++)
+        {
+            if(i > 0)
+            {
+                this.buffer.append(R_VECTOR_ELEMENT_SEPERATOR);
+            }
+            this.buffer.append(booleanArray[i] ? R_TRUE : R_FALSE);
+        }
+        this.buffer.append(R_VECTOR_END);
+        
+        return this;
+    }
+    
+    /**
+     * Append a character vector literal
+     * @param stringArray
+     *          the values (null elements are written as NA)
+     * @return
+     *          this builder
+     */
+    public RVectorLiteralBuilder appendStringVector(String[] stringArray)
+    {
+        int estimatedLength = R_VECTOR_START.length() + 1;
+        for(String currString: stringArray)
+        {
+            estimatedLength += ESTIMATED_STRING_OVERHEAD;
+            if(currString != null)
+            {
+                estimatedLength += currString.length();
+            }
+        }
+        this.buffer.ensureCapacity(this.buffer.length() + estimatedLength);
+        
+        this.buffer.append(R_VECTOR_START);
+        for(int i = 0; i < stringArray.length; i++)
+        {
+            if(i > 0)
+            {
+                this.buffer.append(R_VECTOR_ELEMENT_SEPERATOR);
+            }
+            if(stringArray[i] == null)
+            {
+                this.buffer.append(R_NA);
+            }
+            else
+            {
+                this.appendString(stringArray[i]);
+            }
+        }
+        this.buffer.append(R_VECTOR_END);
+        
+        return this;
+    }
+    
+    /**
+     * Append a single quoted R string
+     * @param javaString
+     *          the raw java string
+     * @return
+     *          this builder
+     */
+    public RVectorLiteralBuilder appendString(String javaString)
+    {
+        this.buffer.append(R_STRING_QUOTE);
+        int length = javaString.length();
+        for(int i = 0; i < length; i++)
+        {
+            char currChar = javaString.charAt(i);
+            if(currChar == R_STRING_ESCAPE)
+            {
+                this.buffer.append(R_STRING_ESCAPE);
+            }
+            this.buffer.append(currChar);
+        }
+        this.buffer.append(R_STRING_QUOTE);
+        
+        return this;
+    }
+}
@@ -20,23 +20,31 @@
 
 package org.jax.r.gui;
 
+import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.JDesktopPane;
 import javax.swing.JFrame;
 import javax.swing.JMenuBar;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
 import javax.swing.JTree;
 import javax.swing.SwingUtilities;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.StyledDocument;
 
 import org.jax.r.jriutilities.RInterface;
 import org.jax.r.project.ProjectAwareDocumentWritingRInterfaceListener;
+import org.jax.r.project.RProject;
 import org.jax.util.TextWrapper;
 import org.jax.util.concurrent.MultiTaskProgressPanel;
+import org.jax.util.project.Project;
 import org.jax.util.project.ProjectManager;
 
 /**
@@ -65,6 +73,12 @@ public class ApplicationFrame extends javax.swing.JFrame
     
     private final ProjectManager projectManager;
     
+    /**
+     * true while we're in the middle of rendering an older page of
+     * terminal history (only touched from the AWT thread)
+     */
+    private boolean loadingOlderTerminalHistory = false;
+    
     /**
      * Constructor
      * @param title
@@ -116,21 +130,24 @@ public class ApplicationFrame extends javax.swing.JFrame
     {
         StyledDocument terminalDocument =
             this.terminalTextPane.getStyledDocument();
-        terminalDocument.addDocumentListener(new DocumentListener()
+        
+        this.dataTreeScrollPane.setViewportView(this.projectTree);
+        
+        final ProjectAwareDocumentWritingRInterfaceListener terminalWriter =
+            new ProjectAwareDocumentWritingRInterfaceListener(
+                    terminalDocument,
+                    this.projectManager);
+        this.rInterface.addRInterfaceListener(terminalWriter);
+        
+        // scroll to the bottom once for each batch of new terminal text
+        terminalWriter.addDocumentFlushListener(new ChangeListener()
         {
             /**
              * {@inheritDoc}
              */
-            public void changedUpdate(DocumentEvent e)
-            {
-                // Don't care
-            }
-            
-            /**
-             * {@inheritDoc}
-             */
-            public void insertUpdate(DocumentEvent e)
+            public void stateChanged(ChangeEvent e)
             {
+                // let the layout catch up with the new text 1st
                 SwingUtilities.invokeLater(new Runnable()
                 {
                     /**
@@ -146,24 +163,85 @@ public class ApplicationFrame extends javax.swing.JFrame
                     }
                 });
             }
-            
+        });
+        
+        // render older history pages when the user scrolls to the top
+        final JScrollPane terminalScrollPane =
+            (JScrollPane)SwingUtilities.getAncestorOfClass(
+                    JScrollPane.class,
+                    this.terminalTextPane);
+        terminalScrollPane.getVerticalScrollBar().addAdjustmentListener(
+                new AdjustmentListener()
+                {
+                    /**
+                     * {@inheritDoc}
+                     */
+                    public void adjustmentValueChanged(AdjustmentEvent e)
+                    {
+                        if(e.getValue() == 0 && terminalWriter.hasOlderHistory())
+                        {
+                            ApplicationFrame.this.loadOlderTerminalHistory(
+                                    terminalWriter,
+                                    terminalScrollPane);
+                        }
+                    }
+                });
+        this.setExtendedState(JFrame.MAXIMIZED_BOTH);
+        this.taskProgressPanel.addTaskToTrack(this.rInterface);
+    }
+    
+    /**
+     * Render the next page of older history at the top of the terminal
+     * keeping the text that the user was looking at in view
+     * @param terminalWriter
+     *          the listener writing the terminal document
+     * @param terminalScrollPane
+     *          the terminal's scroll pane
+     */
+    private void loadOlderTerminalHistory(
+            ProjectAwareDocumentWritingRInterfaceListener terminalWriter,
+            final JScrollPane terminalScrollPane)
+    {
+        if(this.loadingOlderTerminalHistory)
+        {
+            return;
+        }
+        
+        this.loadingOlderTerminalHistory = true;
+        final int insertedLength = terminalWriter.loadOlderHistoryPage();
+        
+        // wait for the layout to catch up before scrolling back to where
+        // the user was
+        SwingUtilities.invokeLater(new Runnable()
+        {
             /**
              * {@inheritDoc}
              */
-            public void removeUpdate(DocumentEvent e)
+            public void run()
             {
-                // Don't care
+                try
+                {
+                    Rectangle previousTop =
+                        ApplicationFrame.this.terminalTextPane.modelToView(
+                                insertedLength);
+                    if(previousTop != null)
+                    {
+                        terminalScrollPane.getViewport().setViewPosition(
+                                new Point(0, previousTop.y));
+                    }
+                }
+                catch(BadLocationException ex)
+                {
+                    LOG.log(Level.WARNING,
+                            "failed to restore the terminal scroll position",
+                            ex);
+                }
+                finally
+                {
+                    ApplicationFrame.this.loadingOlderTerminalHistory = false;
+                }
             }
         });
-        
-        this.dataTreeScrollPane.setViewportView(this.projectTree);
-        
-        this.rInterface.addRInterfaceListener(
-                new ProjectAwareDocumentWritingRInterfaceListener(
-                        terminalDocument,
-                        this.projectManager));
-        this.setExtendedState(JFrame.MAXIMIZED_BOTH);
-        this.taskProgressPanel.addTaskToTrack(this.rInterface);
     }
     
     /**
@@ -241,7 +319,14 @@ public class ApplicationFrame extends javax.swing.JFrame
             }
         }
         
-        // we're OK to quit
+        // we're OK to quit. the project was either saved or the user chose
+        // to lose the unsaved history so the journal can't be allowed to
+        // recover it next time
+        Project activeProject = this.projectManager.getActiveProject();
+        if(activeProject instanceof RProject)
+        {
+            ((RProject)activeProject).discardHistoryJournal();
+        }
         System.exit(0);
     }
 
@@ -19,16 +19,29 @@
  */
 package org.jax.r.gui;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Style;
 import javax.swing.text.StyledDocument;
 
 import org.jax.r.RCommand;
 
 /**
- * An R command editor that includes a preview panel.
+ * An R command editor that includes a preview panel. Preview updates are
+ * debounced by {@link #PREVIEW_DELAY_MILLIS}, command text is rendered on a
+ * background thread and only the commands that actually changed are
+ * replaced in the preview document.
  * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
  */
 public class RCommandEditorAndPreviewPanel
@@ -46,6 +59,56 @@ public class RCommandEditorAndPreviewPanel
      */
     private static final long serialVersionUID = -3304190485844223296L;
     
+    /**
+     * how long the editor has to be quiet (in milliseconds) before we
+     * refresh the preview
+     */
+    public static final int PREVIEW_DELAY_MILLIS = 150;
+    
+    /**
+     * the prompt that we put in front of every previewed command
+     */
+    private static final String COMMAND_PROMPT = "> ";
+    
+    /**
+     * renders command text off of the AWT thread. this is shared by all
+     * preview panels so that a panel that is thrown away doesn't leave a
+     * thread behind
+     */
+    private static final ExecutorService COMMAND_RENDERING_EXECUTOR =
+        Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            public Thread newThread(Runnable runnable)
+            {
+                Thread renderingThread = new Thread(
+                        runnable,
+                        "R Command Preview Renderer");
+                renderingThread.setDaemon(true);
+                return renderingThread;
+            }
+        });
+    
+    /**
+     * restarted on every edit so that we only refresh the preview once the
+     * user pauses
+     */
+    private final Timer previewTimer;
+    
+    /**
+     * incremented (on the AWT thread) for every refresh we request so that
+     * results from stale renderings can be dropped
+     */
+    private int previewGeneration = 0;
+    
+    /**
+     * the command text that is currently shown in the preview document.
+     * only touched from the AWT thread
+     */
+    private List<String> previewedCommandTexts = new ArrayList<String>();
+    
     /**
      * @see #getInternalEditorPanel()
      */
@@ -73,12 +136,23 @@ public class RCommandEditorAndPreviewPanel
             RCommandEditorPanel internalEditorPanel)
     {
         this.internalEditorPanel = internalEditorPanel;
+        this.previewTimer = new Timer(PREVIEW_DELAY_MILLIS, new ActionListener()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            public void actionPerformed(ActionEvent e)
+            {
+                RCommandEditorAndPreviewPanel.this.refreshCommandPreview();
+            }
+        });
+        this.previewTimer.setRepeats(false);
         this.initComponents();
         RDocumentStyle.initializeDocumentStyles(
                 this.commandPreviewTextPane.getStyledDocument());
         this.internalEditorPanel.addRCommandEditorListener(
                 this.commandEditorListener);
-        this.commandModified(internalEditorPanel);
+        this.refreshCommandPreview();
     }
 
     /**
@@ -88,53 +162,155 @@ public class RCommandEditorAndPreviewPanel
      */
     private void commandModified(RCommandEditor editor)
     {
-        this.updateCommandPreview(editor.getCommands());
+        // bursts of edits (eg: typing) only get one refresh
+        this.previewTimer.restart();
+    }
+
+    /**
+     * Grab the current commands and render their text in the background.
+     * The editor's components are only read here on the AWT thread, the
+     * (potentially expensive) command text generation happens on
+     * {@link #COMMAND_RENDERING_EXECUTOR}.
+     */
+    private void refreshCommandPreview()
+    {
+        final RCommand[] commands = this.internalEditorPanel.getCommands();
+        final int generation = ++this.previewGeneration;
+        COMMAND_RENDERING_EXECUTOR.execute(new Runnable()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            public void run()
+            {
+                final List<String> commandTexts =
+                    new ArrayList<String>(commands.length);
+                for(RCommand command: commands)
+                {
+                    commandTexts.add(command.getCommandText());
+                }
+                
+                SwingUtilities.invokeLater(new Runnable()
+                {
+                    /**
+                     * {@inheritDoc}
+                     */
+                    public void run()
+                    {
+                        RCommandEditorAndPreviewPanel.this.updateCommandPreview(
+                                generation,
+                                commandTexts);
+                    }
+                });
+            }
+        });
     }
 
     /**
      * Update the command preview so that it displays the given commands.
-     * @param commands
-     *          the commands to display
+     * Commands that are unchanged at the start and end of the list are left
+     * in place and only the ones in between are replaced.
+     * @param generation
+     *          the generation of the refresh that rendered these commands.
+     *          if a newer refresh has been requested this update is dropped
+     * @param commandTexts
+     *          the rendered text of the commands to display
      */
-    private void updateCommandPreview(RCommand[] commands)
+    private void updateCommandPreview(
+            int generation,
+            List<String> commandTexts)
     {
+        if(generation != this.previewGeneration)
+        {
+            return;
+        }
+        
+        List<String> oldCommandTexts = this.previewedCommandTexts;
+        int oldCount = oldCommandTexts.size();
+        int newCount = commandTexts.size();
+        
+        int prefixCount = 0;
+        int maxCommonCount = Math.min(oldCount, newCount);
+        while(prefixCount < maxCommonCount &&
+              oldCommandTexts.get(prefixCount).equals(
+                      commandTexts.get(prefixCount)))
+        {
+            prefixCount++;
+        }
+        
+        if(prefixCount == oldCount && prefixCount == newCount)
+        {
+            // nothing changed
+            return;
+        }
+        
+        int suffixCount = 0;
+        while(suffixCount < maxCommonCount - prefixCount &&
+              oldCommandTexts.get(oldCount - suffixCount - 1).equals(
+                      commandTexts.get(newCount - suffixCount - 1)))
+        {
+            suffixCount++;
+        }
+        
+        // every command after the first is preceded by a newline. if the
+        // changed range starts at the front and only one side of it is empty
+        // the first surviving command would gain or lose that newline, so we
+        // pull it into the changed range
+        if(prefixCount == 0 && suffixCount > 0 &&
+           (oldCount - suffixCount == 0 || newCount - suffixCount == 0))
+        {
+            suffixCount--;
+        }
+        
+        int replaceStart = 0;
+        for(int i = 0; i < prefixCount; i++)
+        {
+            replaceStart += renderedLength(oldCommandTexts.get(i), i);
+        }
+        
+        int replaceLength = 0;
+        for(int i = prefixCount; i < oldCount - suffixCount; i++)
+        {
+            replaceLength += renderedLength(oldCommandTexts.get(i), i);
+        }
+        
         StyledDocument previewDocument =
             this.commandPreviewTextPane.getStyledDocument();
+        Style promptStyle = previewDocument.getStyle(
+                RDocumentStyle.R_OUTPUT_STYLE.name());
+        Style commandStyle = previewDocument.getStyle(
+                RDocumentStyle.CALLER_COMMAND_STYLE.name());
         try
         {
-            // clear out the current contents
-            previewDocument.remove(0, previewDocument.getLength());
+            previewDocument.remove(replaceStart, replaceLength);
             
-            // iterate through the commands adding them to the preview
-            // one at a time.
-            for(int i = 0; i < commands.length; i++)
+            int insertOffset = replaceStart;
+            for(int i = prefixCount; i < newCount - suffixCount; i++)
             {
-                // insert a "> " at the beginning of each command
-                previewDocument.insertString(
-                        previewDocument.getLength(),
-                        "> ",
-                        previewDocument.getStyle(
-                                RDocumentStyle.R_OUTPUT_STYLE.name()));
-
-                RCommand currCommand = commands[i];
-                if(i < commands.length - 1)
+                if(i > 0)
                 {
                     previewDocument.insertString(
-                            previewDocument.getLength(),
-                            currCommand.getCommandText() + "\n",
-                            previewDocument.getStyle(
-                                    RDocumentStyle.CALLER_COMMAND_STYLE.name()));
-                }
-                else
-                {
-                    // this is the last command... don't append a newline
-                    previewDocument.insertString(
-                            previewDocument.getLength(),
-                            currCommand.getCommandText(),
-                            previewDocument.getStyle(
-                                    RDocumentStyle.CALLER_COMMAND_STYLE.name()));
+                            insertOffset,
+                            "\n",
+                            commandStyle);
+                    insertOffset++;
                 }
+                
+                previewDocument.insertString(
+                        insertOffset,
+                        COMMAND_PROMPT,
+                        promptStyle);
+                insertOffset += COMMAND_PROMPT.length();
+                
+                String currCommandText = commandTexts.get(i);
+                previewDocument.insertString(
+                        insertOffset,
+                        currCommandText,
+                        commandStyle);
+                insertOffset += currCommandText.length();
             }
+            
+            this.previewedCommandTexts = commandTexts;
         }
         catch(BadLocationException ex)
         {
@@ -142,12 +318,47 @@ public class RCommandEditorAndPreviewPanel
                     "failed to update R preview",
                     ex);
             
-            LOG.severe("failed command preview count: " + commands.length);
-            for(RCommand command: commands)
+            LOG.severe("failed command preview count: " + newCount);
+            for(String commandText: commandTexts)
+            {
+                LOG.severe("Command: " + commandText);
+            }
+            
+            // we no longer know what the document holds so start over on
+            // the next refresh
+            try
+            {
+                previewDocument.remove(0, previewDocument.getLength());
+            }
+            catch(BadLocationException ex2)
             {
-                LOG.severe("Command: " + command);
+                LOG.log(Level.SEVERE,
+                        "failed to clear R preview",
+                        ex2);
             }
+            this.previewedCommandTexts = new ArrayList<String>();
+        }
+    }
+    
+    /**
+     * Get the number of characters that the given command takes up in the
+     * preview document
+     * @param commandText
+     *          the command text
+     * @param commandIndex
+     *          the index of the command. every command after the first is
+     *          preceded by a newline
+     * @return
+     *          the length
+     */
+    private static int renderedLength(String commandText, int commandIndex)
+    {
+        int length = COMMAND_PROMPT.length() + commandText.length();
+        if(commandIndex > 0)
+        {
+            length++;
         }
+        return length;
     }
     
     /**
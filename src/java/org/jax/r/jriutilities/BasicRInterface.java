@@ -28,6 +28,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jax.r.RAssignmentCommand;
 import org.jax.r.RCommand;
 import org.jax.r.RException;
 import org.jax.r.SimpleRCommand;
@@ -55,7 +56,7 @@ implements RInterface
     /**
      * a dummy command to flush the queue
      */
-    private static final RCommand FLUSH_COMMAND = new SilentRCommand(
+    private static final RCommand FLUSH_COMMAND = new SilentRQueryCommand(
             "\"finished flushing R commands\"");
     
     /**
@@ -218,6 +219,161 @@ implements RInterface
         this.commandQueue.add(input);
     }
 
+    /**
+     * Assign the given values to an R variable without going through
+     * R command text. The values are transferred directly into an R
+     * numeric vector so this is much cheaper than building a vector literal
+     * with {@link org.jax.r.RUtilities#doubleArrayToRVector(double[])} for
+     * large arrays. Like all other input this is ordered with respect to
+     * previously requested commands and the call returns once the
+     * assignment is complete.
+     * Since no command text is involved the assignment is treated like a
+     * silent command and will not show up in any command history.
+     * This isn't part of {@link RInterface}. Use an {@link RVariableAssigner}
+     * to assign variables through any interface.
+     * @param variableName
+     *          the name of the variable to assign to
+     * @param values
+     *          the values to assign. Use {@link RDoubleVector#NA} for NA's
+     * @throws RException
+     *          if anything goes wrong
+     */
+    public void assignDoubles(String variableName, final double[] values)
+            throws RException
+    {
+        this.assignVariable(new RVariableAssignment(variableName)
+        {
+            @Override
+            public boolean assign(Rengine rEngine)
+            {
+                return rEngine.assign(this.getVariableName(), values);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #assignDoubles(String, double[])} but assigns an R
+     * integer vector
+     * @param variableName
+     *          the name of the variable to assign to
+     * @param values
+     *          the values to assign. Use {@link RIntVector#NA} for NA's
+     * @throws RException
+     *          if anything goes wrong
+     */
+    public void assignInts(String variableName, final int[] values)
+            throws RException
+    {
+        this.assignVariable(new RVariableAssignment(variableName)
+        {
+            @Override
+            public boolean assign(Rengine rEngine)
+            {
+                return rEngine.assign(this.getVariableName(), values);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #assignDoubles(String, double[])} but assigns an R
+     * logical vector
+     * @param variableName
+     *          the name of the variable to assign to
+     * @param values
+     *          the values to assign
+     * @throws RException
+     *          if anything goes wrong
+     */
+    public void assignLogicals(String variableName, final boolean[] values)
+            throws RException
+    {
+        this.assignVariable(new RVariableAssignment(variableName)
+        {
+            @Override
+            public boolean assign(Rengine rEngine)
+            {
+                return rEngine.assign(this.getVariableName(), values);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #assignDoubles(String, double[])} but assigns an R
+     * character vector
+     * @param variableName
+     *          the name of the variable to assign to
+     * @param values
+     *          the values to assign. Use null for NA's
+     * @throws RException
+     *          if anything goes wrong
+     */
+    public void assignStrings(String variableName, final String[] values)
+            throws RException
+    {
+        this.assignVariable(new RVariableAssignment(variableName)
+        {
+            @Override
+            public boolean assign(Rengine rEngine)
+            {
+                return rEngine.assign(this.getVariableName(), values);
+            }
+        });
+    }
+    
+    /**
+     * Queue up the given assignment and wait for R to complete it
+     * @param assignment
+     *          the assignment
+     * @throws RException
+     *          if the assignment fails
+     */
+    private void assignVariable(RVariableAssignment assignment)
+            throws RException
+    {
+        synchronized(this)
+        {
+            if(!this.rHasBeenStarted)
+            {
+                this.rHasBeenStarted = true;
+                this.startR();
+            }
+            
+            // increment the pending command count
+            this.pendingCommandCounter.incrementAndGet();
+            this.fireChangeEvent();
+            
+            this.commandQueue.add(new AnyRInput(
+                    assignment,
+                    AnyRInput.InputType.ASSIGNMENT));
+        }
+        
+        boolean assignmentSucceeded;
+        try
+        {
+            assignmentSucceeded = assignment.getResult().get();
+        }
+        catch(Exception ex)
+        {
+            // pass the buck on this exception
+            throw new RException(ex);
+        }
+        
+        if(!assignmentSucceeded)
+        {
+            String message =
+                "failed to assign values to R variable: " +
+                assignment.getVariableName();
+            if(assignment.getFailureCause() == null)
+            {
+                throw new RException(message);
+            }
+            else
+            {
+                throw new RException(message, assignment.getFailureCause());
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -369,7 +525,12 @@ implements RInterface
             /**
              * just a comment
              */
-            COMMENT
+            COMMENT,
+            
+            /**
+             * a {@link RVariableAssignment}
+             */
+            ASSIGNMENT
         }
         
         /**
@@ -438,6 +599,111 @@ implements RInterface
         }
     }
     
+    /**
+     * A variable assignment that transfers values directly into R
+     * (as opposed to going through R command text)
+     */
+    private static abstract class RVariableAssignment
+    {
+        /**
+         * @see #getVariableName()
+         */
+        private final String variableName;
+        
+        /**
+         * @see #getResult()
+         */
+        private final SettableFuture<Boolean> result;
+        
+        /**
+         * @see #getFailureCause()
+         */
+        private volatile Throwable failureCause;
+        
+        /**
+         * Constructor
+         * @param variableName
+         *          the variable that we're assigning to
+         */
+        public RVariableAssignment(String variableName)
+        {
+            this.variableName = variableName;
+            this.result = new SettableFuture<Boolean>();
+        }
+        
+        /**
+         * Getter for the name of the variable that we're assigning to
+         * @return the variable name
+         */
+        public String getVariableName()
+        {
+            return this.variableName;
+        }
+        
+        /**
+         * Getter for the result which gets set to true on success
+         * @return the result
+         */
+        public SettableFuture<Boolean> getResult()
+        {
+            return this.result;
+        }
+        
+        /**
+         * Getter for whatever was thrown while performing the assignment
+         * @return
+         *          the failure cause or null if nothing was thrown
+         */
+        public Throwable getFailureCause()
+        {
+            return this.failureCause;
+        }
+        
+        /**
+         * Create the command that we hand to {@link RInterfaceListener}s to
+         * represent this assignment. It's silent since the values never go
+         * through R command text
+         * @return
+         *          the command
+         */
+        public RCommand toListenerCommand()
+        {
+            return new SilentRCommand(new RAssignmentCommand(
+                    this.variableName,
+                    "<transferred values>"));
+        }
+        
+        /**
+         * Perform the assignment on the R thread, remembering anything
+         * that gets thrown so that the caller can report it
+         * @param rEngine
+         *          the engine to assign with
+         * @return
+         *          true on success
+         */
+        public boolean performAssignment(Rengine rEngine)
+        {
+            try
+            {
+                return this.assign(rEngine);
+            }
+            catch(RuntimeException ex)
+            {
+                this.failureCause = ex;
+                return false;
+            }
+        }
+        
+        /**
+         * Perform the assignment. This must be called from the R thread.
+         * @param rEngine
+         *          the engine to assign with
+         * @return
+         *          true on success
+         */
+        public abstract boolean assign(Rengine rEngine);
+    }
+    
     /**
      * Our private R callback class...
      */
@@ -579,6 +845,32 @@ implements RInterface
                                 rCommand,
                                 result);
                     }
+                    else if(input.inputType == AnyRInput.InputType.ASSIGNMENT)
+                    {
+                        RVariableAssignment assignment =
+                            (RVariableAssignment)input.getInput();
+                        RCommand assignmentCommand =
+                            assignment.toListenerCommand();
+                        
+                        // notify listeners that we've started
+                        BasicRInterface.this.fireInitiatedCommandProcessing(
+                                assignmentCommand);
+                        if(LOG.isLoggable(Level.FINE))
+                        {
+                            LOG.fine("R assignment to: " + assignment.getVariableName());
+                        }
+                        
+                        boolean assignmentSucceeded =
+                            assignment.performAssignment(rEngine);
+                        assignment.getResult().set(assignmentSucceeded);
+                        
+                        // notify listeners that we're done
+                        BasicRInterface.this.pendingCommandCounter.decrementAndGet();
+                        BasicRInterface.this.fireChangeEvent();
+                        BasicRInterface.this.fireCompletedCommandProcessing(
+                                assignmentCommand,
+                                null);
+                    }
                     else if(input.inputType == AnyRInput.InputType.COMMAND_NO_RETURN)
                     {
                         RCommand rCommand = (RCommand)input.getInput();
@@ -605,7 +897,8 @@ implements RInterface
                         ex);
             }
             
-            return this.pendingCommand.getCommandText() + "\n";
+            return RConsoleInputTransport.toConsoleInput(
+                    this.pendingCommand.getCommandText());
         }
 
         /**
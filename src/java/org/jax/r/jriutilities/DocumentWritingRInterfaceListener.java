@@ -20,9 +20,19 @@
 
 package org.jax.r.jriutilities;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.StyledDocument;
 
@@ -33,7 +43,11 @@ import org.rosuda.JRI.REXP;
 /**
  * This class writes what it hears from the R interface to a
  * styled document. The output is formatted to look like R terminal
- * output.
+ * output. R hands us output in lots of small fragments on its own thread
+ * so appended text is collected and written to the document on the AWT
+ * thread in batches no more than {@link #FLUSH_INTERVAL_MILLIS} apart.
+ * Listeners registered with {@link #addDocumentFlushListener(ChangeListener)}
+ * hear about each batch (which is a good time to scroll).
  * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
  */
 public class DocumentWritingRInterfaceListener implements RInterfaceListener
@@ -44,11 +58,80 @@ public class DocumentWritingRInterfaceListener implements RInterfaceListener
     private static final Logger LOG =
         Logger.getLogger(DocumentWritingRInterfaceListener.class.getName());
     
+    /**
+     * the minimum time between writes to the document
+     */
+    public static final int FLUSH_INTERVAL_MILLIS = 33;
+    
+    /**
+     * the default for {@link #getScrollbackLimit()}
+     */
+    public static final int DEFAULT_SCROLLBACK_LIMIT = 2000000;
+    
+    /**
+     * when we trim we go this fraction (1 / N) below the limit so that we
+     * don't have to trim again on every append
+     */
+    private static final int TRIM_SLACK_DIVISOR = 10;
+    
+    /**
+     * how far past the trim point we'll look for a line break
+     */
+    private static final int MAX_LINE_BREAK_SEARCH_LENGTH = 1024;
+    
     /**
      * the document that we're going to write to
      */
     protected final StyledDocument attachedDocument;
     
+    /**
+     * @see #getScrollbackLimit()
+     */
+    private volatile int scrollbackLimit = DEFAULT_SCROLLBACK_LIMIT;
+    
+    /**
+     * @see #getTranscript()
+     */
+    private RTerminalTranscript transcript = null;
+    
+    /**
+     * text waiting to be written to the document. consecutive text with
+     * the same style shares a run
+     */
+    private final List<StyledTextRun> pendingTextRuns =
+        new ArrayList<StyledTextRun>();
+    
+    /**
+     * fires on the AWT thread to write the pending text
+     */
+    private final Timer flushTimer;
+    
+    /**
+     * the listeners that hear about flushes
+     */
+    private final List<ChangeListener> documentFlushListeners =
+        new CopyOnWriteArrayList<ChangeListener>();
+    
+    /**
+     * A run of text with a single style
+     */
+    private static class StyledTextRun
+    {
+        private final RDocumentStyle docStyle;
+        
+        private final StringBuilder text = new StringBuilder();
+        
+        /**
+         * Constructor
+         * @param docStyle
+         *          the style for the run
+         */
+        public StyledTextRun(RDocumentStyle docStyle)
+        {
+            this.docStyle = docStyle;
+        }
+    }
+    
     /**
      * Constructor
      * @param attachedDocument
@@ -58,6 +141,82 @@ public class DocumentWritingRInterfaceListener implements RInterfaceListener
     {
         this.attachedDocument = attachedDocument;
         RDocumentStyle.initializeDocumentStyles(attachedDocument);
+        
+        this.flushTimer = new Timer(FLUSH_INTERVAL_MILLIS, new ActionListener()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            public void actionPerformed(ActionEvent e)
+            {
+                DocumentWritingRInterfaceListener.this.flushPendingText();
+            }
+        });
+        this.flushTimer.setRepeats(false);
+    }
+    
+    /**
+     * Add a listener that gets called on the AWT thread each time a batch
+     * of text is written to the end of the document
+     * @param listener
+     *          the listener to add
+     */
+    public void addDocumentFlushListener(ChangeListener listener)
+    {
+        this.documentFlushListeners.add(listener);
+    }
+    
+    /**
+     * Remove a document flush listener
+     * @param listener
+     *          the listener to remove
+     */
+    public void removeDocumentFlushListener(ChangeListener listener)
+    {
+        this.documentFlushListeners.remove(listener);
+    }
+    
+    /**
+     * Tell the flush listeners that text was written to the end of the
+     * document. This must be called from the AWT thread
+     */
+    protected void fireDocumentFlushed()
+    {
+        ChangeEvent event = new ChangeEvent(this);
+        for(ChangeListener listener: this.documentFlushListeners)
+        {
+            listener.stateChanged(event);
+        }
+    }
+    
+    /**
+     * Write all of the pending text to the document right away. This must
+     * be called from the AWT thread
+     */
+    protected void flushPendingText()
+    {
+        StyledTextRun[] textRuns;
+        synchronized(this.pendingTextRuns)
+        {
+            if(this.pendingTextRuns.isEmpty())
+            {
+                return;
+            }
+            
+            textRuns = this.pendingTextRuns.toArray(
+                    new StyledTextRun[this.pendingTextRuns.size()]);
+            this.pendingTextRuns.clear();
+        }
+        
+        for(StyledTextRun textRun: textRuns)
+        {
+            this.insertIntoAttachedDocument(
+                    this.attachedDocument.getLength(),
+                    textRun.text.toString(),
+                    textRun.docStyle);
+        }
+        this.trimScrollback();
+        this.fireDocumentFlushed();
     }
     
     /**
@@ -75,18 +234,227 @@ public class DocumentWritingRInterfaceListener implements RInterfaceListener
     }
     
     /**
-     * A little wrapper function for appending text to the document
+     * A little wrapper function for appending text to the document. The
+     * text is written on the AWT thread with the next batch
      * @param text
      *          the text to append
      * @param docStyle
      *          the style to use
      */
     protected void appendToAttachedDocument(String text, RDocumentStyle docStyle)
+    {
+        synchronized(this.pendingTextRuns)
+        {
+            boolean flushNeeded = this.pendingTextRuns.isEmpty();
+            StyledTextRun lastRun = flushNeeded ?
+                                    null :
+                                    this.pendingTextRuns.get(this.pendingTextRuns.size() - 1);
+            if(lastRun == null || lastRun.docStyle != docStyle)
+            {
+                lastRun = new StyledTextRun(docStyle);
+                this.pendingTextRuns.add(lastRun);
+            }
+            lastRun.text.append(text);
+            
+            // the 1st pending text schedules the next flush
+            if(flushNeeded)
+            {
+                this.flushTimer.start();
+            }
+        }
+    }
+    
+    /**
+     * Getter for the scrollback limit. This is the maximum number of chars
+     * that we'll keep in the document. Once the document grows past this
+     * the oldest text is moved to the {@link #getTranscript() transcript}
+     * @return
+     *          the limit (0 or less means unlimited)
+     */
+    public int getScrollbackLimit()
+    {
+        return this.scrollbackLimit;
+    }
+    
+    /**
+     * Setter for the scrollback limit
+     * @see #getScrollbackLimit()
+     * @param scrollbackLimit
+     *          the limit (0 or less means unlimited)
+     */
+    public void setScrollbackLimit(int scrollbackLimit)
+    {
+        this.scrollbackLimit = scrollbackLimit;
+    }
+    
+    /**
+     * Getter for the transcript of text trimmed off of the document
+     * @return
+     *          the transcript or null if nothing has been trimmed yet
+     */
+    public synchronized RTerminalTranscript getTranscript()
+    {
+        return this.transcript;
+    }
+    
+    /**
+     * Close and delete the transcript. Text trimmed after this goes to a
+     * new transcript. Subclasses call this when they replace the whole
+     * document so that one transcript never mixes unrelated text
+     */
+    protected synchronized void resetTranscript()
+    {
+        if(this.transcript != null)
+        {
+            try
+            {
+                this.transcript.close();
+            }
+            catch(IOException ex)
+            {
+                LOG.log(Level.SEVERE,
+                        "failed to close the terminal transcript",
+                        ex);
+            }
+            this.transcript = null;
+        }
+    }
+    
+    /**
+     * Export everything that has been written to the terminal, trimmed
+     * text included. Trimmed text that was already saved somewhere else
+     * (see {@link #getUntranscribedLength()}) isn't part of the export
+     * @param destination
+     *          the writer to export to
+     * @throws IOException
+     *          if the export fails
+     */
+    public synchronized void exportTerminalText(Writer destination)
+            throws IOException
+    {
+        if(this.transcript != null)
+        {
+            this.transcript.exportTo(destination);
+        }
+        
+        try
+        {
+            destination.write(this.attachedDocument.getText(
+                    0,
+                    this.attachedDocument.getLength()));
+        }
+        catch(BadLocationException ex)
+        {
+            // this shouldn't happen since we're staying within the length
+            throw new IOException(ex.getMessage());
+        }
+    }
+    
+    /**
+     * Trim the oldest text out of the document if it's grown past the
+     * scrollback limit
+     */
+    private synchronized void trimScrollback()
+    {
+        int limit = this.scrollbackLimit;
+        int length = this.attachedDocument.getLength();
+        if(limit <= 0 || length <= limit)
+        {
+            return;
+        }
+        
+        try
+        {
+            // trim a bit extra and then on to the end of the line
+            int trimLength = length - (limit - limit / TRIM_SLACK_DIVISOR);
+            String lineRemainder = this.attachedDocument.getText(
+                    trimLength,
+                    Math.min(MAX_LINE_BREAK_SEARCH_LENGTH, length - trimLength));
+            int lineBreakIndex = lineRemainder.indexOf('\n');
+            if(lineBreakIndex != -1)
+            {
+                trimLength += lineBreakIndex + 1;
+            }
+            
+            // text that's already saved somewhere else doesn't need to go
+            // into the transcript
+            int untranscribedLength = Math.min(
+                    trimLength,
+                    Math.max(0, this.getUntranscribedLength()));
+            String trimmedText = this.attachedDocument.getText(
+                    untranscribedLength,
+                    trimLength - untranscribedLength);
+            try
+            {
+                if(trimmedText.length() > 0)
+                {
+                    if(this.transcript == null)
+                    {
+                        this.transcript = new RTerminalTranscript();
+                    }
+                    this.transcript.append(trimmedText);
+                }
+            }
+            catch(IOException ex)
+            {
+                // we still trim since the point is to bound memory use
+                LOG.log(Level.SEVERE,
+                        "failed to write trimmed terminal text to the transcript",
+                        ex);
+            }
+            
+            this.attachedDocument.remove(0, trimLength);
+            this.scrollbackTrimmed(trimLength);
+        }
+        catch(BadLocationException ex)
+        {
+            LOG.log(Level.SEVERE,
+                    "caught exception trimming attached document",
+                    ex);
+        }
+    }
+    
+    /**
+     * Get the number of chars at the top of the document that shouldn't be
+     * copied to the transcript when they're trimmed because they're
+     * already saved somewhere else. This implementation returns 0
+     * @return
+     *          the length
+     */
+    protected int getUntranscribedLength()
+    {
+        return 0;
+    }
+    
+    /**
+     * Called after text has been trimmed off of the top of the document.
+     * This implementation does nothing
+     * @param trimmedLength
+     *          the number of chars that were trimmed
+     */
+    protected void scrollbackTrimmed(int trimmedLength)
+    {
+        // no-op
+    }
+    
+    /**
+     * A little wrapper function for inserting text into the document
+     * @param offset
+     *          the document offset to insert at
+     * @param text
+     *          the text to insert
+     * @param docStyle
+     *          the style to use
+     */
+    protected void insertIntoAttachedDocument(
+            int offset,
+            String text,
+            RDocumentStyle docStyle)
     {
         try
         {
             this.attachedDocument.insertString(
-                    this.attachedDocument.getLength(),
+                    offset,
                     text,
                     this.attachedDocument.getStyle(docStyle.name()));
         }
@@ -120,7 +488,7 @@ public class DocumentWritingRInterfaceListener implements RInterfaceListener
                 LOG.finest("appending command to document: " + activeCommand);
             }
             this.appendToAttachedDocument(
-                    activeCommand.getCommandText() + "\n",
+                    RScriptExpressionCommand.getDisplayText(activeCommand) + "\n",
                     RDocumentStyle.CALLER_COMMAND_STYLE);
         }
         else
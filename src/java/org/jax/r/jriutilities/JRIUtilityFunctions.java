@@ -21,13 +21,14 @@
 package org.jax.r.jriutilities;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
+import org.jax.r.RCommand;
 import org.jax.r.RException;
 import org.jax.r.RUtilities;
 import org.rosuda.JRI.REXP;
 import org.rosuda.JRI.RFactor;
+import org.rosuda.JRI.RVector;
 
 /**
  * Some commonly used utility functions
@@ -41,6 +42,92 @@ public class JRIUtilityFunctions
      */
     private static final String IDENTIFIERS_LIST_COMMAND = "ls()";
     
+    /**
+     * The template (with a %s where the quoted class name goes) for listing
+     * the identifiers of all top level objects that inherit from a class
+     */
+    private static final String IDENTIFIERS_OF_TYPE_LIST_COMMAND_TEMPLATE =
+        "local({" +
+        ".ids <- ls(globalenv()); " +
+        ".ids[as.logical(sapply(.ids, function(id) " +
+        "inherits(get(id, envir=globalenv()), %s)))]})";
+    
+    /**
+     * The template that we use to get the metadata for top level objects in
+     * a single evaluation. The 1st %s is where the identifiers expression
+     * goes and the 2nd is where the optional filter statement goes. The
+     * result is a list of identifiers, class vectors, dimensions, names,
+     * modes and sizes.
+     */
+    private static final String OBJECT_METADATA_COMMAND_TEMPLATE =
+        "local({" +
+        ".ids <- %s; " +
+        ".objs <- lapply(.ids, get, envir=globalenv()); " +
+        "%s" +
+        "list(" +
+        ".ids, " +
+        "lapply(.objs, class), " +
+        "lapply(.objs, function(obj) as.integer(dim(obj))), " +
+        "lapply(.objs, function(obj) if(is.recursive(obj)) names(obj) else NULL), " +
+        "as.character(sapply(.objs, mode)), " +
+        "as.double(sapply(.objs, object.size)))})";
+    
+    /**
+     * The identifiers expression to use with
+     * {@link #OBJECT_METADATA_COMMAND_TEMPLATE} for all top level objects
+     */
+    private static final String ALL_OBJECT_IDENTIFIERS_EXPRESSION =
+        "ls(globalenv())";
+    
+    /**
+     * The filter statement (with a %s where the quoted class name goes)
+     * used with {@link #OBJECT_METADATA_COMMAND_TEMPLATE}
+     */
+    private static final String OBJECT_METADATA_FILTER_TEMPLATE =
+        ".keep <- as.logical(sapply(.objs, inherits, what=%s)); " +
+        ".ids <- .ids[.keep]; " +
+        ".objs <- .objs[.keep]; ";
+    
+    /**
+     * The template (with a %s where the factor expression goes) that we use
+     * to get a factor's codes and levels in one evaluation
+     */
+    private static final String FACTOR_VECTOR_COMMAND_TEMPLATE =
+        "local({.f <- as.factor(%s); list(as.integer(.f), levels(.f))})";
+    
+    /**
+     * R function that gives the {@link RDataFrameColumn.ColumnType} name for
+     * a data.frame column
+     */
+    private static final String DATA_FRAME_COLUMN_TYPE_FUNCTION =
+        "function(col) " +
+        "if(is.factor(col)) \"FACTOR\" " +
+        "else if(is.logical(col)) \"LOGICAL\" " +
+        "else if(is.integer(col)) \"INTEGER\" " +
+        "else if(is.double(col)) \"DOUBLE\" " +
+        "else \"CHARACTER\"";
+    
+    /**
+     * The template (with a %s where the data.frame accessor goes) that we use
+     * to pull a whole data.frame over in a single evaluation. The result is
+     * a list of row names, column names, column types, column classes,
+     * column levels and column values (or NULL if it isn't a data.frame)
+     */
+    private static final String DATA_FRAME_SNAPSHOT_COMMAND_TEMPLATE =
+        "local({" +
+        ".df <- %s; " +
+        ".type <- " + DATA_FRAME_COLUMN_TYPE_FUNCTION + "; " +
+        "if(!is.data.frame(.df)) NULL else list(" +
+        "as.character(rownames(.df)), " +
+        "as.character(names(.df)), " +
+        "as.character(sapply(.df, .type)), " +
+        "lapply(.df, class), " +
+        "lapply(.df, function(col) if(is.factor(col)) levels(col) else NULL), " +
+        "lapply(.df, function(col) switch(.type(col), " +
+        "FACTOR=, LOGICAL=, INTEGER=as.integer(col), " +
+        "DOUBLE=as.double(col), " +
+        "as.character(col))))})";
+    
     /**
      * Determine if the given {@link RObject} counts as a top level object
      * @param rObject
@@ -71,7 +158,7 @@ public class JRIUtilityFunctions
         String existsExpressionString =
             "exists(\"" + accessorString + "\")";
         REXP existsExpression = rInterface.evaluateCommand(
-                new SilentRCommand(existsExpressionString));
+                new SilentRQueryCommand(existsExpressionString));
         return existsExpression.asBool().isTRUE();
     }
     
@@ -87,10 +174,7 @@ public class JRIUtilityFunctions
     public static List<RObject> getTopLevelObjects(RInterface rInterface)
             throws RException
     {
-        // get a listing of all identifiers
-        REXP idsExpression = rInterface.evaluateCommand(new SilentRCommand(
-                IDENTIFIERS_LIST_COMMAND));
-        String[] ids = idsExpression.asStringArray();
+        String[] ids = JRIUtilityFunctions.getTopLevelObjectNames(rInterface);
         ArrayList<RObject> rObjects = new ArrayList<RObject>(ids.length);
         for(String currId: ids)
         {
@@ -100,6 +184,27 @@ public class JRIUtilityFunctions
         return rObjects;
     }
     
+    /**
+     * Get the names of all R identifiers in scope.
+     * @param rInterface
+     *          the r interface to use
+     * @return
+     *          the available identifiers
+     * @throws RException
+     *          if R fails to list the identifiers
+     */
+    public static String[] getTopLevelObjectNames(RInterface rInterface)
+            throws RException
+    {
+        REXP idsExpression = rInterface.evaluateCommand(new SilentRQueryCommand(
+                IDENTIFIERS_LIST_COMMAND));
+        if(idsExpression == null)
+        {
+            throw new RException("failed to list the top level objects");
+        }
+        return JRIUtilityFunctions.extractStringArrayOrEmpty(idsExpression);
+    }
+    
     /**
      * Get all identifiers in scope with the given type
      * @param rInterface
@@ -116,23 +221,146 @@ public class JRIUtilityFunctions
             String type)
             throws RException
     {
-        // 1st get a list of all the id's... then filter by type
-        List<RObject> topLevelRObjects = JRIUtilityFunctions.getTopLevelObjects(
-                rInterface);
-        Iterator<RObject> objIter = topLevelRObjects.iterator();
-        while(objIter.hasNext())
+        // do the type filtering on the R side so that we only need a single
+        // evaluation rather than one for every identifier
+        String idsOfTypeExpressionString = String.format(
+                IDENTIFIERS_OF_TYPE_LIST_COMMAND_TEMPLATE,
+                RUtilities.javaStringToRString(type));
+        REXP idsExpression = rInterface.evaluateCommand(new SilentRQueryCommand(
+                idsOfTypeExpressionString));
+        String[] ids = JRIUtilityFunctions.extractStringArrayOrEmpty(
+                idsExpression);
+        ArrayList<RObject> rObjects = new ArrayList<RObject>(ids.length);
+        for(String currId: ids)
         {
-            RObject currRObj = objIter.next();
-            
-            // filter this identifier out of the list if it isn't the right
-            // type
-            if(!JRIUtilityFunctions.inheritsRClass(currRObj, type))
-            {
-                objIter.remove();
-            }
+            rObjects.add(new RObject(rInterface, currId));
         }
         
-        return topLevelRObjects;
+        return rObjects;
+    }
+    
+    /**
+     * Get metadata for all of the top level objects using a single
+     * evaluation
+     * @param rInterface
+     *          the R interface to use
+     * @param rClassFilter
+     *          if non-null only objects inheriting from this class are
+     *          included (the filtering is done in R)
+     * @return
+     *          the metadata in the same order as "ls()"
+     * @throws RException
+     *          if we run into problems with the R interface
+     */
+    public static List<RObjectMetadata> getTopLevelObjectMetadata(
+            RInterface rInterface,
+            String rClassFilter)
+            throws RException
+    {
+        String filterExpressionString;
+        if(rClassFilter == null)
+        {
+            filterExpressionString = "";
+        }
+        else
+        {
+            filterExpressionString = String.format(
+                    OBJECT_METADATA_FILTER_TEMPLATE,
+                    RUtilities.javaStringToRString(rClassFilter));
+        }
+        
+        return JRIUtilityFunctions.getTopLevelObjectMetadata(
+                rInterface,
+                ALL_OBJECT_IDENTIFIERS_EXPRESSION,
+                filterExpressionString);
+    }
+    
+    /**
+     * Get metadata for the given top level objects using a single
+     * evaluation. Any identifiers that don't exist are left out of the
+     * result.
+     * @param rInterface
+     *          the R interface to use
+     * @param identifiers
+     *          the identifiers of the objects that we want metadata for
+     * @return
+     *          the metadata
+     * @throws RException
+     *          if we run into problems with the R interface
+     */
+    public static List<RObjectMetadata> getMetadataForTopLevelObjects(
+            RInterface rInterface,
+            String[] identifiers)
+            throws RException
+    {
+        return JRIUtilityFunctions.getTopLevelObjectMetadata(
+                rInterface,
+                "intersect(" + RUtilities.stringArrayToRVector(identifiers) +
+                ", ls(globalenv()))",
+                "");
+    }
+    
+    /**
+     * Run {@link #OBJECT_METADATA_COMMAND_TEMPLATE} and convert the result
+     * @param rInterface
+     *          the R interface to use
+     * @param identifiersExpressionString
+     *          the R expression for the identifiers to include
+     * @param filterExpressionString
+     *          the filter statement (can be empty)
+     * @return
+     *          the metadata
+     * @throws RException
+     *          if we run into problems with the R interface
+     */
+    private static List<RObjectMetadata> getTopLevelObjectMetadata(
+            RInterface rInterface,
+            String identifiersExpressionString,
+            String filterExpressionString)
+            throws RException
+    {
+        REXP metadataExpression = rInterface.evaluateCommand(new SilentRQueryCommand(
+                String.format(
+                        OBJECT_METADATA_COMMAND_TEMPLATE,
+                        identifiersExpressionString,
+                        filterExpressionString)));
+        if(metadataExpression == null ||
+           metadataExpression.getType() != REXP.XT_VECTOR)
+        {
+            throw new RException(
+                    "failed to read the top level object metadata");
+        }
+        
+        RVector metadataVector = metadataExpression.asVector();
+        String[] ids = JRIUtilityFunctions.extractStringArrayOrEmpty(
+                metadataVector.at(0));
+        RVector classes = metadataVector.at(1).asVector();
+        RVector dimensions = metadataVector.at(2).asVector();
+        RVector names = metadataVector.at(3).asVector();
+        String[] modes = JRIUtilityFunctions.extractStringArrayOrEmpty(
+                metadataVector.at(4));
+        double[] sizes = JRIUtilityFunctions.extractDoubleArrayOrEmpty(
+                metadataVector.at(5));
+        
+        List<RObjectMetadata> metadataList = new ArrayList<RObjectMetadata>(
+                ids.length);
+        for(int i = 0; i < ids.length; i++)
+        {
+            int[] currDimensions = JRIUtilityFunctions.extractIntArrayOrEmpty(
+                    dimensions.at(i));
+            REXP currNames = names.at(i);
+            metadataList.add(new RObjectMetadata(
+                    ids[i],
+                    JRIUtilityFunctions.extractStringArrayOrEmpty(classes.at(i)),
+                    currDimensions.length == 0 ? null : currDimensions,
+                    currNames == null || currNames.getType() == REXP.XT_NULL ?
+                            null :
+                            currNames.asStringArray(),
+                    modes[i],
+                    (long)sizes[i]));
+        }
+        
+        return metadataList;
     }
     
     /**
@@ -147,7 +375,7 @@ public class JRIUtilityFunctions
         String namesExpressionString =
             "names(" + rObject.getAccessorExpressionString() + ")";
         REXP namesResult = rObject.getRInterface().evaluateCommand(
-                new SilentRCommand(namesExpressionString));
+                new SilentRQueryCommand(namesExpressionString));
         
         if(namesResult == null)
         {
@@ -176,7 +404,7 @@ public class JRIUtilityFunctions
             "inherits(" + rObject.getAccessorExpressionString() + ", \"" +
             rClassName + "\")";
         REXP inheritsResult = rObject.getRInterface().evaluateCommand(
-                new SilentRCommand(inheritsClassExpressionString));
+                new SilentRQueryCommand(inheritsClassExpressionString));
         return inheritsResult.asBool().isTRUE();
     }
 
@@ -193,7 +421,7 @@ public class JRIUtilityFunctions
         String namesExpressionString =
             "colnames(" + rMatrix.getAccessorExpressionString() + ")";
         REXP namesResult = rMatrix.getRInterface().evaluateCommand(
-                new SilentRCommand(namesExpressionString));
+                new SilentRQueryCommand(namesExpressionString));
         
         if(namesResult == null)
         {
@@ -218,7 +446,7 @@ public class JRIUtilityFunctions
         String namesExpressionString =
             "rownames(" + rMatrix.getAccessorExpressionString() + ")";
         REXP namesResult = rMatrix.getRInterface().evaluateCommand(
-                new SilentRCommand(namesExpressionString));
+                new SilentRQueryCommand(namesExpressionString));
         
         if(namesResult == null)
         {
@@ -243,7 +471,7 @@ public class JRIUtilityFunctions
         String numRowsExpression =
             "nrow(" + rMatrix.getAccessorExpressionString() + ")";
         REXP numRowsResult = rMatrix.getRInterface().evaluateCommand(
-                new SilentRCommand(numRowsExpression));
+                new SilentRQueryCommand(numRowsExpression));
         
         return numRowsResult.asInt();
     }
@@ -261,7 +489,7 @@ public class JRIUtilityFunctions
         String numColsExpression =
             "ncol(" + rMatrix.getAccessorExpressionString() + ")";
         REXP numColsResult = rMatrix.getRInterface().evaluateCommand(
-                new SilentRCommand(numColsExpression));
+                new SilentRQueryCommand(numColsExpression));
         
         return numColsResult.asInt();
     }
@@ -283,7 +511,7 @@ public class JRIUtilityFunctions
                 rMatrix.getAccessorExpressionString(),
                 zeroBasedColumnIndex);
         REXP columnRExpression = rMatrix.getRInterface().evaluateCommand(
-                new SilentRCommand(columnExpressionString));
+                new SilentRQueryCommand(columnExpressionString));
         
         if(columnRExpression == null)
         {
@@ -312,7 +540,7 @@ public class JRIUtilityFunctions
                 rMatrix.getAccessorExpressionString(),
                 zeroBasedColumnIndex);
         REXP columnRExpression = rMatrix.getRInterface().evaluateCommand(
-                new SilentRCommand(columnExpressionString));
+                new SilentRQueryCommand(columnExpressionString));
         
         if(columnRExpression == null)
         {
@@ -341,7 +569,7 @@ public class JRIUtilityFunctions
                 rMatrix.getAccessorExpressionString(),
                 zeroBasedRowIndex);
         REXP rowRExpression = rMatrix.getRInterface().evaluateCommand(
-                new SilentRCommand(rowExpressionString));
+                new SilentRQueryCommand(rowExpressionString));
         
         if(rowRExpression == null)
         {
@@ -365,49 +593,270 @@ public class JRIUtilityFunctions
     public static String[] getColumnFactors(
             RObject rMatrix,
             int zeroBasedColumnIndex)
+    {
+        RFactorVector factor = JRIUtilityFunctions.getColumnFactorVector(
+                rMatrix,
+                zeroBasedColumnIndex);
+        
+        if(factor == null)
+        {
+            return null;
+        }
+        else
+        {
+            return factor.toStringArray();
+        }
+    }
+    
+    /**
+     * Get a column factor from the given matrix in its dictionary encoded
+     * form. Unlike {@link #getColumnFactors(RObject, int)} the factor is
+     * not expanded into a string per element.
+     * @param rMatrix
+     *          the R matrix that we're getting the factor from
+     * @param zeroBasedColumnIndex
+     *          the column to get the factor from
+     * @return
+     *          the factor or null if the column can't be read
+     */
+    public static RFactorVector getColumnFactorVector(
+            RObject rMatrix,
+            int zeroBasedColumnIndex)
     {
         String columnExpressionString = RUtilities.columnIndexExpression(
                 rMatrix.getAccessorExpressionString(),
                 zeroBasedColumnIndex);
-        REXP columnRExpression = rMatrix.getRInterface().evaluateCommand(
-                new SilentRCommand(columnExpressionString));
+        return JRIUtilityFunctions.getFactorVector(
+                rMatrix.getRInterface(),
+                columnExpressionString);
+    }
+    
+    /**
+     * Get the factor that the given expression evaluates to in its
+     * dictionary encoded form. The levels and codes are fetched together
+     * in a single evaluation.
+     * @param rInterface
+     *          the R interface to use
+     * @param factorExpressionString
+     *          the expression which evaluates to a factor
+     * @return
+     *          the factor or null if the expression can't be read
+     */
+    public static RFactorVector getFactorVector(
+            RInterface rInterface,
+            String factorExpressionString)
+    {
+        REXP factorListExpression = rInterface.evaluateCommand(new SilentRQueryCommand(
+                String.format(FACTOR_VECTOR_COMMAND_TEMPLATE, factorExpressionString)));
         
-        if(columnRExpression == null)
+        if(factorListExpression == null ||
+           factorListExpression.getType() != REXP.XT_VECTOR)
+        {
+            return null;
+        }
+        else
+        {
+            RVector factorList = factorListExpression.asVector();
+            return new RFactorVector(
+                    JRIUtilityFunctions.extractStringArrayOrEmpty(
+                            factorList.at(1)),
+                    JRIUtilityFunctions.extractIntArrayOrEmpty(
+                            factorList.at(0)));
+        }
+    }
+    
+    /**
+     * Fetch the entire contents of the given data.frame using a single
+     * evaluation. This is much cheaper than reading the column names, row
+     * count and each of the columns separately.
+     * @param rDataFrame
+     *          the data.frame object
+     * @return
+     *          the data.frame contents or null if the given object isn't
+     *          a data.frame
+     */
+    public static RDataFrameSnapshot getDataFrameSnapshot(RObject rDataFrame)
+    {
+        REXP snapshotExpression = rDataFrame.getRInterface().evaluateCommand(
+                JRIUtilityFunctions.createDataFrameSnapshotCommand(
+                        rDataFrame.getAccessorExpressionString()));
+        
+        return JRIUtilityFunctions.extractDataFrameSnapshot(snapshotExpression);
+    }
+    
+    /**
+     * Create the command used by {@link #getDataFrameSnapshot(RObject)}
+     * @param dataFrameExpressionString
+     *          the expression that evaluates to the data.frame
+     * @return
+     *          the command
+     */
+    static RCommand createDataFrameSnapshotCommand(
+            String dataFrameExpressionString)
+    {
+        return new SilentRQueryCommand(String.format(
+                DATA_FRAME_SNAPSHOT_COMMAND_TEMPLATE,
+                dataFrameExpressionString));
+    }
+    
+    /**
+     * Convert the result of a command created by
+     * {@link #createDataFrameSnapshotCommand(String)} into a snapshot
+     * @param snapshotExpression
+     *          the R result
+     * @return
+     *          the snapshot or null if the expression wasn't a data.frame
+     */
+    static RDataFrameSnapshot extractDataFrameSnapshot(
+            REXP snapshotExpression)
+    {
+        if(snapshotExpression == null ||
+           snapshotExpression.getType() != REXP.XT_VECTOR)
         {
             return null;
         }
         else
         {
-            return JRIUtilityFunctions.extractStringArrayFromFactor(
-                    columnRExpression);
+            RVector snapshotVector = snapshotExpression.asVector();
+            String[] rowNames = JRIUtilityFunctions.extractStringArrayOrEmpty(
+                    snapshotVector.at(0));
+            String[] columnNames = JRIUtilityFunctions.extractStringArrayOrEmpty(
+                    snapshotVector.at(1));
+            String[] columnTypes = JRIUtilityFunctions.extractStringArrayOrEmpty(
+                    snapshotVector.at(2));
+            RVector columnClasses = snapshotVector.at(3).asVector();
+            RVector columnLevels = snapshotVector.at(4).asVector();
+            RVector columnValues = snapshotVector.at(5).asVector();
+            
+            List<RDataFrameColumn> columns = new ArrayList<RDataFrameColumn>(
+                    columnNames.length);
+            for(int i = 0; i < columnNames.length; i++)
+            {
+                String[] currClasses =
+                    JRIUtilityFunctions.extractStringArrayOrEmpty(
+                            columnClasses.at(i));
+                RDataFrameColumn.ColumnType currType =
+                    RDataFrameColumn.ColumnType.valueOf(columnTypes[i]);
+                REXP currValues = columnValues.at(i);
+                
+                switch(currType)
+                {
+                    case DOUBLE:
+                    {
+                        columns.add(new RDataFrameColumn(
+                                columnNames[i],
+                                currClasses,
+                                JRIUtilityFunctions.extractDoubleArrayOrEmpty(
+                                        currValues)));
+                    }
+                    break;
+                    
+                    case CHARACTER:
+                    {
+                        columns.add(new RDataFrameColumn(
+                                columnNames[i],
+                                currClasses,
+                                JRIUtilityFunctions.extractStringArrayOrEmpty(
+                                        currValues)));
+                    }
+                    break;
+                    
+                    default:
+                    {
+                        String[] currLevels = null;
+                        if(currType == RDataFrameColumn.ColumnType.FACTOR)
+                        {
+                            currLevels =
+                                JRIUtilityFunctions.extractStringArrayOrEmpty(
+                                        columnLevels.at(i));
+                        }
+                        
+                        columns.add(new RDataFrameColumn(
+                                columnNames[i],
+                                currClasses,
+                                currType,
+                                JRIUtilityFunctions.extractIntArrayOrEmpty(
+                                        currValues),
+                                currLevels));
+                    }
+                    break;
+                }
+            }
+            
+            return new RDataFrameSnapshot(rowNames, columns);
         }
     }
     
+    /**
+     * Get the string array from the given expression treating null
+     * expressions or null arrays as empty
+     * @param rExpression
+     *          the expression
+     * @return
+     *          the array (never null)
+     */
+    private static String[] extractStringArrayOrEmpty(REXP rExpression)
+    {
+        String[] stringArray =
+            rExpression == null ? null : rExpression.asStringArray();
+        return stringArray == null ? new String[0] : stringArray;
+    }
+    
+    /**
+     * Get the int array from the given expression treating null
+     * expressions or null arrays as empty
+     * @param rExpression
+     *          the expression
+     * @return
+     *          the array (never null)
+     */
+    private static int[] extractIntArrayOrEmpty(REXP rExpression)
+    {
+        int[] intArray =
+            rExpression == null ? null : rExpression.asIntArray();
+        return intArray == null ? new int[0] : intArray;
+    }
+    
+    /**
+     * Get the double array from the given expression treating null
+     * expressions or null arrays as empty
+     * @param rExpression
+     *          the expression
+     * @return
+     *          the array (never null)
+     */
+    private static double[] extractDoubleArrayOrEmpty(REXP rExpression)
+    {
+        double[] doubleArray =
+            rExpression == null ? null : rExpression.asDoubleArray();
+        return doubleArray == null ? new double[0] : doubleArray;
+    }
+    
     /**
      * Convert the given R expression into an integer array
      * @param rExpression
      *          the expression to convert
      * @return
      *          the int array with NA's converted to nulls
+     * @see #extractIntVector(REXP)
      */
     public static Integer[] extractIntegerValues(REXP rExpression)
     {
-        double[] expressionAsDoubles = rExpression.asDoubleArray();
-        Integer[] expressionAsIntObjects = new Integer[expressionAsDoubles.length];
-        for(int i = 0; i < expressionAsDoubles.length; i++)
-        {
-            if(Double.isNaN(expressionAsDoubles[i]))
-            {
-                expressionAsIntObjects[i] = null;
-            }
-            else
-            {
-                expressionAsIntObjects[i] = Integer.valueOf(
-                        (int)expressionAsDoubles[i]);
-            }
-        }
-        
-        return expressionAsIntObjects;
+        return JRIUtilityFunctions.extractIntVector(rExpression).toBoxedArray();
+    }
+    
+    /**
+     * Convert the given R expression into an NA aware int vector. Unlike
+     * {@link #extractIntegerValues(REXP)} this doesn't box any values and
+     * integer data from JRI is wrapped without copying.
+     * @param rExpression
+     *          the expression to convert
+     * @return
+     *          the vector
+     */
+    public static RIntVector extractIntVector(REXP rExpression)
+    {
+        return RIntVector.fromREXP(rExpression);
     }
     
     /**
@@ -435,7 +884,9 @@ public class JRIUtilityFunctions
      * @param rExpression
      *          the expression to convert
      * @return
-     *          the double array with NA's converted to nulls
+     *          the double array with NA's and NaN's converted to nulls.
+     *          Use {@link #extractDoubleVector(REXP)} if you need to tell
+     *          NA apart from other NaN values
      */
     public static Double[] extractDoubleValues(REXP rExpression)
     {
@@ -457,6 +908,20 @@ public class JRIUtilityFunctions
         return expressionAsDoubleObjects;
     }
     
+    /**
+     * Convert the given R expression into an NA aware double vector. Unlike
+     * {@link #extractDoubleValues(REXP)} this doesn't box any values and
+     * the array from JRI is wrapped without copying.
+     * @param rExpression
+     *          the expression to convert
+     * @return
+     *          the vector
+     */
+    public static RDoubleVector extractDoubleVector(REXP rExpression)
+    {
+        return RDoubleVector.fromREXP(rExpression);
+    }
+    
     /**
      * Extract a string array from the given factor expression
      * @param factorRExpression
@@ -501,7 +966,24 @@ public class JRIUtilityFunctions
     }
     
     /**
-     * Create a unique identifier that starts with the given string
+     * Convert the given R expression into an NA aware logical vector
+     * @param rExpression
+     *          the R expression that contains the logical array
+     * @return
+     *          the vector
+     */
+    public static RLogicalVector extractLogicalVector(REXP rExpression)
+    {
+        return RLogicalVector.fromREXP(rExpression);
+    }
+    
+    /**
+     * Create a unique identifier that starts with the given string. This
+     * delegates to the shared {@link RIdentifierAllocator} which checks
+     * candidates against the cached workspace listing and verifies them in
+     * a single R call. Use
+     * {@link RIdentifierAllocator#allocateIdentifier(String)} instead if
+     * you need the identifier to be reserved.
      * @param rInterface
      *          the R Interface to use
      * @param startingIdentifier
@@ -513,24 +995,8 @@ public class JRIUtilityFunctions
             RInterface rInterface,
             String startingIdentifier)
     {
-        startingIdentifier = startingIdentifier.trim();
-        
-        if(startingIdentifier.length() == 0)
-        {
-            startingIdentifier = "object";
-        }
-        
-        String candidateIdentifier = startingIdentifier;
-        RObject candidateRObject = new RObject(rInterface, candidateIdentifier);
-        for(int i = 0;
-            JRIUtilityFunctions.isTopLevelObject(candidateRObject);
-            i++)
-        {
-            candidateIdentifier = startingIdentifier + i;
-            candidateRObject = new RObject(rInterface, candidateIdentifier);
-        }
-        
-        return candidateIdentifier;
+        return RIdentifierAllocator.getAllocator(rInterface).findUniqueIdentifier(
+                startingIdentifier);
     }
     
     /**
@@ -561,7 +1027,7 @@ public class JRIUtilityFunctions
             String identifier)
     {
         // we can use a null test to find out
-        REXP result = rInterface.evaluateCommand(new SilentRCommand(
+        REXP result = rInterface.evaluateCommand(new SilentRQueryCommand(
                 "is.null(" + identifier + ')'));
         return result.asBool().isTRUE();
     }
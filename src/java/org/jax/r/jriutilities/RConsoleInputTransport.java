@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jax.r.RUtilities;
+
+/**
+ * Converts command text into the input that we hand to R's console loop.
+ * R reads console input into a fixed size buffer (4096 bytes in current
+ * versions) and JRI copies everything we return for a read into that one
+ * buffer, so anything longer is truncated. Commands that wouldn't fit
+ * (counting all of their lines, not just the longest one) are written to
+ * a temporary file which R then parses, so the console only ever sees one
+ * short line.
+ * Each expression in the file is evaluated at the top level and visible
+ * results are printed, just like they would be for a command typed at the
+ * console. Also like the console, an error in one expression is reported
+ * and evaluation carries on with the next one (unlike source(...) which
+ * stops at the first error). A syntax error anywhere in the command means
+ * that nothing is evaluated.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+class RConsoleInputTransport
+{
+    /**
+     * our logger
+     */
+    private static final Logger LOG = Logger.getLogger(
+            RConsoleInputTransport.class.getName());
+    
+    /**
+     * the size of the buffer that R reads console input into. This is
+     * CONSOLE_BUFFER_SIZE in R's Defn.h, which R_ReplIteration passes as the
+     * buffer length to the ReadConsole callback. JRI's Re_ReadConsole
+     * copies the whole string returned by rReadConsole into that buffer and
+     * cuts it off at the length - 1 bytes that fit before the terminating
+     * null
+     */
+    private static final int R_CONSOLE_BUFFER_SIZE = 4096;
+    
+    /**
+     * the most UTF-8 bytes (including the trailing newline) that we'll pass
+     * to the console directly
+     */
+    static final int MAX_CONSOLE_INPUT_BYTES = R_CONSOLE_BUFFER_SIZE - 1;
+    
+    /**
+     * the console input template for evaluating a command file. The 1st %s
+     * is the quoted file name. The file removes itself once it's been read
+     */
+    private static final String EVALUATE_COMMAND_FILE_TEMPLATE =
+        "local({.f <- %s; on.exit(unlink(.f)); " +
+        "for(.e in parse(.f, encoding=\"UTF-8\")) {" +
+        ".r <- try(withVisible(eval(.e, globalenv()))); " +
+        "if(!inherits(.r, \"try-error\") && .r$visible) print(.r$value)}; " +
+        "invisible(NULL)})\n";
+    
+    private static final String TEMP_FILE_PREFIX = "rjava-command";
+    
+    private static final String TEMP_FILE_SUFFIX = ".R";
+    
+    private static final String FILE_ENCODING = "UTF-8";
+    
+    /**
+     * Get the console input to use for the given command text
+     * @param commandText
+     *          the command text
+     * @return
+     *          the console input (including the trailing newline)
+     */
+    static String toConsoleInput(String commandText)
+    {
+        if(!RConsoleInputTransport.fitsConsoleBuffer(commandText))
+        {
+            try
+            {
+                File commandFile = RConsoleInputTransport.writeCommandFile(
+                        commandText);
+                return String.format(
+                        EVALUATE_COMMAND_FILE_TEMPLATE,
+                        RUtilities.javaStringToRString(
+                                commandFile.getAbsolutePath()));
+            }
+            catch(IOException ex)
+            {
+                LOG.log(Level.WARNING,
+                        "failed to write long command to a file. " +
+                        "passing it to the console as is",
+                        ex);
+            }
+        }
+        
+        return commandText + "\n";
+    }
+    
+    /**
+     * Determine if the given command (plus its trailing newline) fits in
+     * R's console buffer. We count UTF-8 bytes since that's the widest
+     * encoding that R's console is likely to be using
+     * @param commandText
+     *          the command text
+     * @return
+     *          true if the console can take the command in one read
+     */
+    static boolean fitsConsoleBuffer(String commandText)
+    {
+        // +1 for the newline
+        int byteCount = 1;
+        for(int i = 0; i < commandText.length(); i++)
+        {
+            char currChar = commandText.charAt(i);
+            if(currChar < 0x80)
+            {
+                byteCount++;
+            }
+            else if(currChar < 0x800)
+            {
+                byteCount += 2;
+            }
+            else if(currChar >= Character.MIN_SURROGATE &&
+                    currChar <= Character.MAX_SURROGATE)
+            {
+                // a surrogate pair is 4 bytes so 2 for each half
+                byteCount += 2;
+            }
+            else
+            {
+                byteCount += 3;
+            }
+            
+            if(byteCount > MAX_CONSOLE_INPUT_BYTES)
+            {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Write the command text to a temp file
+     * @param commandText
+     *          the command text
+     * @return
+     *          the file
+     * @throws IOException
+     *          if the write fails
+     */
+    private static File writeCommandFile(String commandText) throws IOException
+    {
+        // R removes the file once it's been read. we don't also register it
+        // with deleteOnExit since that list is never trimmed and would grow
+        // with every long command for the rest of the session
+        File commandFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        Writer writer = new OutputStreamWriter(
+                new FileOutputStream(commandFile),
+                FILE_ENCODING);
+        try
+        {
+            writer.write(commandText);
+            writer.write('\n');
+        }
+        finally
+        {
+            writer.close();
+        }
+        
+        return commandFile;
+    }
+}
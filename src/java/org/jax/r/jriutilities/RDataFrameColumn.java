@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.BitSet;
+
+/**
+ * A single column from a {@link RDataFrameSnapshot}. The column values are
+ * held in whichever primitive array matches the column's
+ * {@link #getColumnType() type} and factors are kept in their dictionary
+ * encoded form (levels plus integer codes).
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RDataFrameColumn
+{
+    /**
+     * The storage type used for the column values
+     */
+    public enum ColumnType
+    {
+        /**
+         * numeric column stored in {@link RDataFrameColumn#getDoubleValues()}
+         */
+        DOUBLE,
+        
+        /**
+         * integer column stored in {@link RDataFrameColumn#getIntValues()}
+         */
+        INTEGER,
+        
+        /**
+         * logical column stored in {@link RDataFrameColumn#getIntValues()}
+         * as 0 for FALSE and 1 for TRUE
+         */
+        LOGICAL,
+        
+        /**
+         * character column stored in
+         * {@link RDataFrameColumn#getStringValues()}. Any column type that
+         * we don't have special handling for is converted to character.
+         */
+        CHARACTER,
+        
+        /**
+         * factor column stored as one based level codes in
+         * {@link RDataFrameColumn#getIntValues()} and the level names in
+         * {@link RDataFrameColumn#getLevels()}
+         */
+        FACTOR
+    }
+    
+    /**
+     * @see #getName()
+     */
+    private final String name;
+    
+    /**
+     * @see #getRClasses()
+     */
+    private final String[] rClasses;
+    
+    /**
+     * @see #getColumnType()
+     */
+    private final ColumnType columnType;
+    
+    /**
+     * @see #getDoubleValues()
+     */
+    private final double[] doubleValues;
+    
+    /**
+     * @see #getIntValues()
+     */
+    private final int[] intValues;
+    
+    /**
+     * @see #getStringValues()
+     */
+    private final String[] stringValues;
+    
+    /**
+     * @see #getLevels()
+     */
+    private final String[] levels;
+    
+    /**
+     * the NA mask. bit i is set iff row i is NA
+     */
+    private final BitSet naMask;
+    
+    /**
+     * Constructor for a {@link ColumnType#DOUBLE} column
+     * @param name
+     *          see {@link #getName()}
+     * @param rClasses
+     *          see {@link #getRClasses()}
+     * @param doubleValues
+     *          see {@link #getDoubleValues()}
+     */
+    public RDataFrameColumn(
+            String name,
+            String[] rClasses,
+            double[] doubleValues)
+    {
+        this(name, rClasses, ColumnType.DOUBLE, doubleValues, null, null, null);
+    }
+    
+    /**
+     * Constructor for a {@link ColumnType#CHARACTER} column
+     * @param name
+     *          see {@link #getName()}
+     * @param rClasses
+     *          see {@link #getRClasses()}
+     * @param stringValues
+     *          see {@link #getStringValues()}
+     */
+    public RDataFrameColumn(
+            String name,
+            String[] rClasses,
+            String[] stringValues)
+    {
+        this(name, rClasses, ColumnType.CHARACTER, null, null, stringValues, null);
+    }
+    
+    /**
+     * Constructor for {@link ColumnType#INTEGER}, {@link ColumnType#LOGICAL}
+     * and {@link ColumnType#FACTOR} columns
+     * @param name
+     *          see {@link #getName()}
+     * @param rClasses
+     *          see {@link #getRClasses()}
+     * @param columnType
+     *          see {@link #getColumnType()}
+     * @param intValues
+     *          see {@link #getIntValues()}
+     * @param levels
+     *          see {@link #getLevels()}. Should be null unless this is a
+     *          factor
+     */
+    public RDataFrameColumn(
+            String name,
+            String[] rClasses,
+            ColumnType columnType,
+            int[] intValues,
+            String[] levels)
+    {
+        this(name, rClasses, columnType, null, intValues, null, levels);
+    }
+    
+    /**
+     * Private constructor that all of the public constructors delegate to
+     */
+    private RDataFrameColumn(
+            String name,
+            String[] rClasses,
+            ColumnType columnType,
+            double[] doubleValues,
+            int[] intValues,
+            String[] stringValues,
+            String[] levels)
+    {
+        this.name = name;
+        this.rClasses = rClasses;
+        this.columnType = columnType;
+        this.doubleValues = doubleValues;
+        this.intValues = intValues;
+        this.stringValues = stringValues;
+        this.levels = levels;
+        this.naMask = new BitSet();
+        
+        if(doubleValues != null)
+        {
+            for(int i = 0; i < doubleValues.length; i++)
+            {
+                if(RDoubleVector.isNA(doubleValues[i]))
+                {
+                    this.naMask.set(i);
+                }
+            }
+        }
+        else if(intValues != null)
+        {
+            for(int i = 0; i < intValues.length; i++)
+            {
+                if(intValues[i] == RIntVector.NA)
+                {
+                    this.naMask.set(i);
+                }
+            }
+        }
+        else if(stringValues != null)
+        {
+            for(int i = 0; i < stringValues.length; i++)
+            {
+                if(stringValues[i] == null)
+                {
+                    this.naMask.set(i);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Getter for the column name
+     * @return the name
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+    
+    /**
+     * Getter for the R class vector of this column (what you would get
+     * from calling "class(...)" on the column)
+     * @return the R classes
+     */
+    public String[] getRClasses()
+    {
+        return this.rClasses;
+    }
+    
+    /**
+     * Getter for the column type. This tells you which of the value
+     * getters is valid for this column.
+     * @return the column type
+     */
+    public ColumnType getColumnType()
+    {
+        return this.columnType;
+    }
+    
+    /**
+     * Getter for the double values. NA's are represented by R's NA NaN
+     * (see {@link RDoubleVector#isNA(double)}). Other NaN values are not NA
+     * @return
+     *          the values or null if this isn't a {@link ColumnType#DOUBLE}
+     *          column
+     */
+    public double[] getDoubleValues()
+    {
+        return this.doubleValues;
+    }
+    
+    /**
+     * Getter for the integer values. For logical columns the values are
+     * 0 or 1 and for factors the values are one based level codes. NA's
+     * are represented as {@link Integer#MIN_VALUE}.
+     * @return
+     *          the values or null if this isn't a {@link ColumnType#INTEGER},
+     *          {@link ColumnType#LOGICAL} or {@link ColumnType#FACTOR}
+     *          column
+     */
+    public int[] getIntValues()
+    {
+        return this.intValues;
+    }
+    
+    /**
+     * Wrap the double values in an NA aware vector (no copy is made)
+     * @return
+     *          the vector or null if this isn't a {@link ColumnType#DOUBLE}
+     *          column
+     */
+    public RDoubleVector getDoubleVector()
+    {
+        return this.doubleValues == null ?
+               null :
+               new RDoubleVector(this.doubleValues);
+    }
+    
+    /**
+     * Wrap the integer values in an NA aware vector (no copy is made)
+     * @return
+     *          the vector or null if this isn't a {@link ColumnType#INTEGER}
+     *          column
+     */
+    public RIntVector getIntVector()
+    {
+        return this.columnType == ColumnType.INTEGER ?
+               new RIntVector(this.intValues) :
+               null;
+    }
+    
+    /**
+     * Wrap the logical values in an NA aware vector (no copy is made)
+     * @return
+     *          the vector or null if this isn't a {@link ColumnType#LOGICAL}
+     *          column
+     */
+    public RLogicalVector getLogicalVector()
+    {
+        return this.columnType == ColumnType.LOGICAL ?
+               new RLogicalVector(this.intValues) :
+               null;
+    }
+    
+    /**
+     * Wrap the factor codes and levels in a dictionary encoded factor
+     * vector (no copy is made)
+     * @return
+     *          the factor or null if this isn't a {@link ColumnType#FACTOR}
+     *          column
+     */
+    public RFactorVector getFactorVector()
+    {
+        return this.columnType == ColumnType.FACTOR ?
+               new RFactorVector(this.levels, this.intValues) :
+               null;
+    }
+    
+    /**
+     * Getter for the string values. NA's are represented as null.
+     * @return
+     *          the values or null if this isn't a
+     *          {@link ColumnType#CHARACTER} column
+     */
+    public String[] getStringValues()
+    {
+        return this.stringValues;
+    }
+    
+    /**
+     * Getter for the factor levels
+     * @return
+     *          the levels or null if this isn't a {@link ColumnType#FACTOR}
+     *          column
+     */
+    public String[] getLevels()
+    {
+        return this.levels;
+    }
+    
+    /**
+     * Get the number of rows in this column
+     * @return
+     *          the row count
+     */
+    public int getRowCount()
+    {
+        if(this.doubleValues != null)
+        {
+            return this.doubleValues.length;
+        }
+        else if(this.intValues != null)
+        {
+            return this.intValues.length;
+        }
+        else
+        {
+            return this.stringValues.length;
+        }
+    }
+    
+    /**
+     * Determine if the given row is NA
+     * @param zeroBasedRowIndex
+     *          the row index
+     * @return
+     *          true iff the value at the given row is NA
+     */
+    public boolean isNA(int zeroBasedRowIndex)
+    {
+        return this.naMask.get(zeroBasedRowIndex);
+    }
+    
+    /**
+     * Get the NA mask for this column. Bit i is set iff row i is NA.
+     * @return
+     *          the NA mask (returns a copy to protect our data)
+     */
+    public BitSet getNAMask()
+    {
+        return (BitSet)this.naMask.clone();
+    }
+    
+    /**
+     * Get the string value for the given row. This works for all column
+     * types, but for non character columns it means that a new string
+     * is created.
+     * @param zeroBasedRowIndex
+     *          the row
+     * @return
+     *          the string value or null for NA
+     */
+    public String getValueAsString(int zeroBasedRowIndex)
+    {
+        if(this.isNA(zeroBasedRowIndex))
+        {
+            return null;
+        }
+        else
+        {
+            switch(this.columnType)
+            {
+                case DOUBLE:
+                    return Double.toString(this.doubleValues[zeroBasedRowIndex]);
+                case INTEGER:
+                    return Integer.toString(this.intValues[zeroBasedRowIndex]);
+                case LOGICAL:
+                    return this.intValues[zeroBasedRowIndex] == 0 ? "FALSE" : "TRUE";
+                case FACTOR:
+                    // R factor codes are one based
+                    return this.levels[this.intValues[zeroBasedRowIndex] - 1];
+                default:
+                    return this.stringValues[zeroBasedRowIndex];
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A point in time copy of the contents of an R data.frame. See
+ * {@link JRIUtilityFunctions#getDataFrameSnapshot(RObject)} for how to get
+ * one of these.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RDataFrameSnapshot
+{
+    /**
+     * @see #getRowNames()
+     */
+    private final String[] rowNames;
+    
+    /**
+     * @see #getColumns()
+     */
+    private final List<RDataFrameColumn> columns;
+    
+    /**
+     * Constructor
+     * @param rowNames
+     *          see {@link #getRowNames()}
+     * @param columns
+     *          see {@link #getColumns()}
+     */
+    public RDataFrameSnapshot(
+            String[] rowNames,
+            List<RDataFrameColumn> columns)
+    {
+        this.rowNames = rowNames;
+        this.columns = Collections.unmodifiableList(
+                new ArrayList<RDataFrameColumn>(columns));
+    }
+    
+    /**
+     * Getter for the row names
+     * @return the row names
+     */
+    public String[] getRowNames()
+    {
+        return this.rowNames;
+    }
+    
+    /**
+     * Getter for the number of rows
+     * @return the row count
+     */
+    public int getRowCount()
+    {
+        return this.rowNames.length;
+    }
+    
+    /**
+     * Getter for the columns in the order that they appear in the data.frame
+     * @return the columns (unmodifiable)
+     */
+    public List<RDataFrameColumn> getColumns()
+    {
+        return this.columns;
+    }
+    
+    /**
+     * Getter for the number of columns
+     * @return the column count
+     */
+    public int getColumnCount()
+    {
+        return this.columns.size();
+    }
+    
+    /**
+     * Get the column names
+     * @return the column names
+     */
+    public String[] getColumnNames()
+    {
+        String[] columnNames = new String[this.columns.size()];
+        for(int i = 0; i < columnNames.length; i++)
+        {
+            columnNames[i] = this.columns.get(i).getName();
+        }
+        
+        return columnNames;
+    }
+    
+    /**
+     * Get the 1st column with the given name
+     * @param columnName
+     *          the column name
+     * @return
+     *          the column or null if there is no column with that name
+     */
+    public RDataFrameColumn getColumn(String columnName)
+    {
+        for(RDataFrameColumn currColumn: this.columns)
+        {
+            if(columnName.equals(currColumn.getName()))
+            {
+                return currColumn;
+            }
+        }
+        
+        return null;
+    }
+}
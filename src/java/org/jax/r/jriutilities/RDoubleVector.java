@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.BitSet;
+
+import org.rosuda.JRI.REXP;
+
+/**
+ * An NA aware R numeric vector backed by a primitive double array. Only
+ * values with R's {@link #NA} bit pattern are treated as NA. Other NaN's
+ * are kept as ordinary values like R's is.nan(...) does.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RDoubleVector extends RPrimitiveVector
+{
+    /**
+     * R's NA_real_. This is a NaN with a particular bit pattern which is
+     * what R uses to tell NA apart from other NaN's
+     */
+    public static final double NA = Double.longBitsToDouble(0x7FF00000000007A2L);
+    
+    /**
+     * R tells NA apart from other NaN's by this value in the low word
+     */
+    private static final int NA_LOW_WORD = 1954;
+    
+    /**
+     * @see #getValues()
+     */
+    private final double[] values;
+    
+    /**
+     * Constructor. The given array is wrapped rather than copied.
+     * @param values
+     *          the values with NA's represented as {@link #NA}
+     */
+    public RDoubleVector(double[] values)
+    {
+        super(RDoubleVector.createNAMask(values));
+        this.values = values;
+    }
+    
+    /**
+     * Create a double vector from the given R expression. The array that
+     * JRI gives us is used directly (no copy).
+     * @param rExpression
+     *          the expression
+     * @return
+     *          the vector or null if the expression can't be converted
+     */
+    public static RDoubleVector fromREXP(REXP rExpression)
+    {
+        double[] doubleValues = rExpression.asDoubleArray();
+        if(doubleValues == null)
+        {
+            return null;
+        }
+        else
+        {
+            return new RDoubleVector(doubleValues);
+        }
+    }
+    
+    /**
+     * Build the NA mask for the given values
+     * @param values
+     *          the values
+     * @return
+     *          the mask
+     */
+    private static BitSet createNAMask(double[] values)
+    {
+        BitSet naMask = new BitSet();
+        for(int i = 0; i < values.length; i++)
+        {
+            if(RDoubleVector.isNA(values[i]))
+            {
+                naMask.set(i);
+            }
+        }
+        
+        return naMask;
+    }
+    
+    /**
+     * Determine if the given value is R's NA (as opposed to some other NaN)
+     * @param value
+     *          the value to test
+     * @return
+     *          true if the value is NA
+     */
+    public static boolean isNA(double value)
+    {
+        return Double.isNaN(value) &&
+               (int)Double.doubleToRawLongBits(value) == NA_LOW_WORD;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return this.values.length;
+    }
+    
+    /**
+     * Get the value at the given index
+     * @param index
+     *          the zero based index
+     * @return
+     *          the value ({@link #NA} if the element is NA)
+     */
+    public double get(int index)
+    {
+        return this.values[index];
+    }
+    
+    /**
+     * Getter for the backing array. This is not a copy so don't modify it.
+     * @return the values
+     */
+    public double[] getValues()
+    {
+        return this.values;
+    }
+    
+    /**
+     * Convert to a boxed array where NA's are represented as null
+     * @return
+     *          the boxed array
+     */
+    public Double[] toBoxedArray()
+    {
+        Double[] boxedValues = new Double[this.values.length];
+        for(int i = 0; i < this.values.length; i++)
+        {
+            if(!RDoubleVector.isNA(this.values[i]))
+            {
+                boxedValues[i] = Double.valueOf(this.values[i]);
+            }
+        }
+        
+        return boxedValues;
+    }
+}
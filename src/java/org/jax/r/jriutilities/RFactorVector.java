@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.BitSet;
+
+/**
+ * An R factor kept in R's own dictionary encoded form: an array of levels
+ * plus an int code per element. This is much more compact than expanding
+ * the factor into one string reference per element when there are many
+ * elements but few levels.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RFactorVector extends RPrimitiveVector
+{
+    /**
+     * The code that R uses to represent an NA factor element
+     */
+    public static final int NA = Integer.MIN_VALUE;
+    
+    /**
+     * @see #getLevels()
+     */
+    private final String[] levels;
+    
+    /**
+     * @see #getCodes()
+     */
+    private final int[] codes;
+    
+    /**
+     * Constructor. The given arrays are wrapped rather than copied.
+     * @param levels
+     *          see {@link #getLevels()}
+     * @param codes
+     *          see {@link #getCodes()}
+     */
+    public RFactorVector(String[] levels, int[] codes)
+    {
+        super(RFactorVector.createNAMask(codes));
+        this.levels = levels;
+        this.codes = codes;
+    }
+    
+    /**
+     * Build the NA mask for the given codes
+     * @param codes
+     *          the codes
+     * @return
+     *          the mask
+     */
+    private static BitSet createNAMask(int[] codes)
+    {
+        BitSet naMask = new BitSet();
+        for(int i = 0; i < codes.length; i++)
+        {
+            if(codes[i] == NA)
+            {
+                naMask.set(i);
+            }
+        }
+        
+        return naMask;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return this.codes.length;
+    }
+    
+    /**
+     * Getter for the factor levels
+     * @return the levels (not a copy so don't modify it)
+     */
+    public String[] getLevels()
+    {
+        return this.levels;
+    }
+    
+    /**
+     * Getter for the level codes. Like R these are one based indexes into
+     * {@link #getLevels()} with NA's represented as {@link #NA}
+     * @return the codes (not a copy so don't modify it)
+     */
+    public int[] getCodes()
+    {
+        return this.codes;
+    }
+    
+    /**
+     * Get the zero based index into {@link #getLevels()} for the given
+     * element
+     * @param index
+     *          the zero based element index
+     * @return
+     *          the level index or -1 for NA
+     */
+    public int getLevelIndex(int index)
+    {
+        int code = this.codes[index];
+        return code == NA ? -1 : code - 1;
+    }
+    
+    /**
+     * Get the level string for the given element
+     * @param index
+     *          the zero based element index
+     * @return
+     *          the level or null for NA
+     */
+    public String get(int index)
+    {
+        int levelIndex = this.getLevelIndex(index);
+        return levelIndex == -1 ? null : this.levels[levelIndex];
+    }
+    
+    /**
+     * Expand this factor into a string per element. This is the
+     * representation that {@link JRIUtilityFunctions#getColumnFactors(RObject, int)}
+     * gives you. Only the array is new, the level strings are shared.
+     * @return
+     *          the strings with NA's as null
+     */
+    public String[] toStringArray()
+    {
+        String[] strings = new String[this.codes.length];
+        for(int i = 0; i < strings.length; i++)
+        {
+            strings[i] = this.get(i);
+        }
+        
+        return strings;
+    }
+}
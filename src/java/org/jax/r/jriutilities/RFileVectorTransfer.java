@@ -0,0 +1,819 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+import org.jax.r.RException;
+import org.jax.r.RUtilities;
+import org.rosuda.JRI.REXP;
+
+/**
+ * Moves very large vectors and matrices between java and R through a
+ * temporary file instead of through JRI or R command text.
+ * The java side streams the file through a {@link FileChannel} in fixed size
+ * chunks and the R side uses readBin/writeBin, so the only thing that goes through
+ * the R interface is a short command containing the file name. Since all
+ * that the two sides share is a file this also works when R is running in
+ * a different process (as long as the transfer directory is visible to
+ * both).
+ * <p>
+ * The file layout is a header of {@link #HEADER_INT_COUNT} little endian
+ * 32 bit ints: magic number, format version, value type code, value count,
+ * row count and column count (the row and column counts are -1 for plain
+ * vectors). The values follow the header as little endian 8 byte doubles
+ * or 4 byte ints (logicals are written as ints).
+ * </p>
+ * <p>
+ * The file isn't memory mapped because some platforms (windows) won't
+ * delete a file until its mapping is garbage collected.
+ * </p>
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RFileVectorTransfer
+{
+    /**
+     * our logger
+     */
+    private static final Logger LOG = Logger.getLogger(
+            RFileVectorTransfer.class.getName());
+    
+    /**
+     * the magic number at the start of every transfer file ("RJVX")
+     */
+    private static final int MAGIC_NUMBER = 0x524A5658;
+    
+    /**
+     * the file format version
+     */
+    private static final int FORMAT_VERSION = 1;
+    
+    /**
+     * type code for doubles. R's switch(...) is 1 based so the codes are too
+     */
+    private static final int DOUBLE_TYPE_CODE = 1;
+    
+    /**
+     * type code for ints
+     */
+    private static final int INT_TYPE_CODE = 2;
+    
+    /**
+     * type code for logicals
+     */
+    private static final int LOGICAL_TYPE_CODE = 3;
+    
+    /**
+     * dimension value used for plain vectors
+     */
+    private static final int NO_DIMENSION = -1;
+    
+    /**
+     * the number of ints in the header
+     */
+    private static final int HEADER_INT_COUNT = 6;
+    
+    /**
+     * the header size in bytes
+     */
+    private static final int HEADER_SIZE_BYTES = HEADER_INT_COUNT * 4;
+    
+    /**
+     * the size of the buffer that we stream values through
+     */
+    private static final int CHUNK_SIZE_BYTES = 64 * 1024;
+    
+    /**
+     * the temp file prefix
+     */
+    private static final String TEMP_FILE_PREFIX = "rjava-transfer";
+    
+    /**
+     * the temp file suffix
+     */
+    private static final String TEMP_FILE_SUFFIX = ".bin";
+    
+    /**
+     * the R expression template (1st %s is the quoted file name) for reading
+     * a transfer file
+     */
+    private static final String READ_EXPRESSION_TEMPLATE =
+        "local({" +
+        ".con <- file(%s, \"rb\"); " +
+        "on.exit(close(.con)); " +
+        ".h <- readBin(.con, \"integer\", " + HEADER_INT_COUNT + "L, size=4L, endian=\"little\"); " +
+        "if(.h[1] != " + MAGIC_NUMBER + "L) stop(\"bad transfer file\"); " +
+        ".v <- switch(.h[3], " +
+        "readBin(.con, \"double\", .h[4], size=8L, endian=\"little\"), " +
+        "readBin(.con, \"integer\", .h[4], size=4L, endian=\"little\"), " +
+        "as.logical(readBin(.con, \"integer\", .h[4], size=4L, endian=\"little\"))); " +
+        "if(.h[5] >= 0L) dim(.v) <- .h[5:6]; " +
+        ".v})";
+    
+    /**
+     * the R command template (1st %s is the value expression, 2nd is the
+     * quoted file name) for writing a transfer file. evaluates to TRUE on
+     * success
+     */
+    private static final String WRITE_COMMAND_TEMPLATE =
+        "local({" +
+        ".v <- %s; " +
+        ".con <- file(%s, \"wb\"); " +
+        "on.exit(close(.con)); " +
+        ".t <- if(is.logical(.v)) " + LOGICAL_TYPE_CODE + "L " +
+        "else if(is.integer(.v)) " + INT_TYPE_CODE + "L " +
+        "else " + DOUBLE_TYPE_CODE + "L; " +
+        ".d <- dim(.v); " +
+        "if(length(.d) != 2L) .d <- c(" + NO_DIMENSION + "L, " + NO_DIMENSION + "L); " +
+        "writeBin(as.integer(c(" + MAGIC_NUMBER + "L, " + FORMAT_VERSION + "L, .t, length(.v), .d)), " +
+        ".con, size=4L, endian=\"little\"); " +
+        "if(.t == " + DOUBLE_TYPE_CODE + "L) writeBin(as.double(.v), .con, size=8L, endian=\"little\") " +
+        "else writeBin(as.integer(.v), .con, size=4L, endian=\"little\"); " +
+        "TRUE})";
+    
+    /**
+     * @see #getRInterface()
+     */
+    private final RInterface rInterface;
+    
+    /**
+     * @see #getTransferDirectory()
+     */
+    private final File transferDirectory;
+    
+    /**
+     * Constructor which uses the system temp directory for transfers
+     * @param rInterface
+     *          see {@link #getRInterface()}
+     */
+    public RFileVectorTransfer(RInterface rInterface)
+    {
+        this(rInterface, null);
+    }
+    
+    /**
+     * Constructor
+     * @param rInterface
+     *          see {@link #getRInterface()}
+     * @param transferDirectory
+     *          see {@link #getTransferDirectory()}
+     */
+    public RFileVectorTransfer(RInterface rInterface, File transferDirectory)
+    {
+        this.rInterface = rInterface;
+        this.transferDirectory = transferDirectory;
+    }
+    
+    /**
+     * Getter for the R interface that we're transferring to/from
+     * @return the R interface
+     */
+    public RInterface getRInterface()
+    {
+        return this.rInterface;
+    }
+    
+    /**
+     * Getter for the directory where we put transfer files. This must be
+     * visible to both java and R. If it's null the system temp directory
+     * is used
+     * @return the transfer directory
+     */
+    public File getTransferDirectory()
+    {
+        return this.transferDirectory;
+    }
+    
+    /**
+     * Assign the given values to an R numeric vector
+     * @param variableName
+     *          the R variable to assign to
+     * @param values
+     *          the values
+     * @throws RException
+     *          if the transfer fails
+     */
+    public void assignDoubles(String variableName, double[] values)
+            throws RException
+    {
+        this.assignDoubleMatrix(variableName, values, NO_DIMENSION, NO_DIMENSION);
+    }
+    
+    /**
+     * Assign the given values to an R numeric matrix
+     * @param variableName
+     *          the R variable to assign to
+     * @param columnMajorValues
+     *          the values in column major order (the way R stores them)
+     * @param rowCount
+     *          the number of rows
+     * @param columnCount
+     *          the number of columns
+     * @throws RException
+     *          if the transfer fails
+     */
+    public void assignDoubleMatrix(
+            String variableName,
+            double[] columnMajorValues,
+            int rowCount,
+            int columnCount)
+            throws RException
+    {
+        File transferFile = this.createTransferFile();
+        try
+        {
+            FileOutputStream transferOut = new FileOutputStream(transferFile);
+            try
+            {
+                FileChannel channel = transferOut.getChannel();
+                RFileVectorTransfer.writeHeader(
+                        channel,
+                        DOUBLE_TYPE_CODE,
+                        columnMajorValues.length,
+                        rowCount,
+                        columnCount);
+                RFileVectorTransfer.writeDoubles(channel, columnMajorValues);
+            }
+            finally
+            {
+                transferOut.close();
+            }
+            
+            this.assignFromTransferFile(variableName, transferFile);
+        }
+        catch(IOException ex)
+        {
+            throw new RException(ex);
+        }
+        finally
+        {
+            RFileVectorTransfer.deleteTransferFile(transferFile);
+        }
+    }
+    
+    /**
+     * Assign the given values to an R integer vector
+     * @param variableName
+     *          the R variable to assign to
+     * @param values
+     *          the values ({@link RIntVector#NA} for NA's)
+     * @throws RException
+     *          if the transfer fails
+     */
+    public void assignInts(String variableName, int[] values)
+            throws RException
+    {
+        this.assignIntValues(variableName, INT_TYPE_CODE, values);
+    }
+    
+    /**
+     * Assign the given values to an R logical vector
+     * @param variableName
+     *          the R variable to assign to
+     * @param values
+     *          the values
+     * @throws RException
+     *          if the transfer fails
+     */
+    public void assignLogicals(String variableName, boolean[] values)
+            throws RException
+    {
+        this.assignIntValues(
+                variableName,
+                LOGICAL_TYPE_CODE,
+                new RLogicalVector(values).getValues());
+    }
+    
+    /**
+     * Fetch the value of the given R expression as a numeric vector.
+     * Matrices are returned in column major order.
+     * @param rObject
+     *          the object to fetch
+     * @return
+     *          the values
+     * @throws RException
+     *          if the transfer fails
+     */
+    public RDoubleVector fetchDoubles(RObject rObject) throws RException
+    {
+        File transferFile = this.createTransferFile();
+        try
+        {
+            FileInputStream transferIn = this.fetchToTransferFile(
+                    "as.double(" + rObject.getAccessorExpressionString() + ")",
+                    transferFile);
+            try
+            {
+                FileChannel channel = transferIn.getChannel();
+                int valueCount = RFileVectorTransfer.readHeader(
+                        channel,
+                        DOUBLE_TYPE_CODE);
+                double[] values = new double[valueCount];
+                RFileVectorTransfer.readDoubles(channel, values);
+                
+                return new RDoubleVector(values);
+            }
+            finally
+            {
+                transferIn.close();
+            }
+        }
+        catch(IOException ex)
+        {
+            throw new RException(ex);
+        }
+        finally
+        {
+            RFileVectorTransfer.deleteTransferFile(transferFile);
+        }
+    }
+    
+    /**
+     * Fetch the value of the given R expression as an integer vector.
+     * Matrices are returned in column major order.
+     * @param rObject
+     *          the object to fetch
+     * @return
+     *          the values
+     * @throws RException
+     *          if the transfer fails
+     */
+    public RIntVector fetchInts(RObject rObject) throws RException
+    {
+        return new RIntVector(this.fetchIntValues(
+                "as.integer(" + rObject.getAccessorExpressionString() + ")",
+                INT_TYPE_CODE));
+    }
+    
+    /**
+     * Fetch the value of the given R expression as a logical vector.
+     * Matrices are returned in column major order.
+     * @param rObject
+     *          the object to fetch
+     * @return
+     *          the values
+     * @throws RException
+     *          if the transfer fails
+     */
+    public RLogicalVector fetchLogicals(RObject rObject) throws RException
+    {
+        return new RLogicalVector(this.fetchIntValues(
+                "as.logical(" + rObject.getAccessorExpressionString() + ")",
+                LOGICAL_TYPE_CODE));
+    }
+    
+    /**
+     * Assign int values (which includes logicals) to an R variable
+     * @param variableName
+     *          the variable name
+     * @param typeCode
+     *          the type code
+     * @param values
+     *          the values
+     * @throws RException
+     *          if the transfer fails
+     */
+    private void assignIntValues(
+            String variableName,
+            int typeCode,
+            int[] values)
+            throws RException
+    {
+        File transferFile = this.createTransferFile();
+        try
+        {
+            FileOutputStream transferOut = new FileOutputStream(transferFile);
+            try
+            {
+                FileChannel channel = transferOut.getChannel();
+                RFileVectorTransfer.writeHeader(
+                        channel,
+                        typeCode,
+                        values.length,
+                        NO_DIMENSION,
+                        NO_DIMENSION);
+                RFileVectorTransfer.writeInts(channel, values);
+            }
+            finally
+            {
+                transferOut.close();
+            }
+            
+            this.assignFromTransferFile(variableName, transferFile);
+        }
+        catch(IOException ex)
+        {
+            throw new RException(ex);
+        }
+        finally
+        {
+            RFileVectorTransfer.deleteTransferFile(transferFile);
+        }
+    }
+    
+    /**
+     * Fetch int values (which includes logicals) from R
+     * @param valueExpressionString
+     *          the R expression for the values
+     * @param typeCode
+     *          the type code that we expect
+     * @return
+     *          the values
+     * @throws RException
+     *          if the transfer fails
+     */
+    private int[] fetchIntValues(String valueExpressionString, int typeCode)
+            throws RException
+    {
+        File transferFile = this.createTransferFile();
+        try
+        {
+            FileInputStream transferIn = this.fetchToTransferFile(
+                    valueExpressionString,
+                    transferFile);
+            try
+            {
+                FileChannel channel = transferIn.getChannel();
+                int valueCount = RFileVectorTransfer.readHeader(channel, typeCode);
+                int[] values = new int[valueCount];
+                RFileVectorTransfer.readInts(channel, values);
+                
+                return values;
+            }
+            finally
+            {
+                transferIn.close();
+            }
+        }
+        catch(IOException ex)
+        {
+            throw new RException(ex);
+        }
+        finally
+        {
+            RFileVectorTransfer.deleteTransferFile(transferFile);
+        }
+    }
+    
+    /**
+     * Create a new transfer file
+     * @return
+     *          the file
+     * @throws RException
+     *          if we can't create the file
+     */
+    private File createTransferFile() throws RException
+    {
+        try
+        {
+            return File.createTempFile(
+                    TEMP_FILE_PREFIX,
+                    TEMP_FILE_SUFFIX,
+                    this.transferDirectory);
+        }
+        catch(IOException ex)
+        {
+            throw new RException(ex);
+        }
+    }
+    
+    /**
+     * Write the file header
+     * @param channel
+     *          the channel to write to
+     * @param typeCode
+     *          the value type code
+     * @param valueCount
+     *          the number of values
+     * @param rowCount
+     *          the row count or {@link #NO_DIMENSION}
+     * @param columnCount
+     *          the column count or {@link #NO_DIMENSION}
+     * @throws IOException
+     *          if the write fails
+     */
+    private static void writeHeader(
+            FileChannel channel,
+            int typeCode,
+            int valueCount,
+            int rowCount,
+            int columnCount)
+            throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC_NUMBER);
+        header.putInt(FORMAT_VERSION);
+        header.putInt(typeCode);
+        header.putInt(valueCount);
+        header.putInt(rowCount);
+        header.putInt(columnCount);
+        header.flip();
+        RFileVectorTransfer.writeFully(channel, header);
+    }
+    
+    /**
+     * Write the given doubles a chunk at a time
+     * @param channel
+     *          the channel to write to
+     * @param values
+     *          the values
+     * @throws IOException
+     *          if the write fails
+     */
+    private static void writeDoubles(FileChannel channel, double[] values)
+            throws IOException
+    {
+        ByteBuffer chunk = RFileVectorTransfer.allocateChunk();
+        DoubleBuffer doubleChunk = chunk.asDoubleBuffer();
+        int offset = 0;
+        while(offset < values.length)
+        {
+            int count = Math.min(doubleChunk.capacity(), values.length - offset);
+            doubleChunk.clear();
+            doubleChunk.put(values, offset, count);
+            chunk.clear();
+            chunk.limit(count * 8);
+            RFileVectorTransfer.writeFully(channel, chunk);
+            offset += count;
+        }
+    }
+    
+    /**
+     * Write the given ints a chunk at a time
+     * @param channel
+     *          the channel to write to
+     * @param values
+     *          the values
+     * @throws IOException
+     *          if the write fails
+     */
+    private static void writeInts(FileChannel channel, int[] values)
+            throws IOException
+    {
+        ByteBuffer chunk = RFileVectorTransfer.allocateChunk();
+        IntBuffer intChunk = chunk.asIntBuffer();
+        int offset = 0;
+        while(offset < values.length)
+        {
+            int count = Math.min(intChunk.capacity(), values.length - offset);
+            intChunk.clear();
+            intChunk.put(values, offset, count);
+            chunk.clear();
+            chunk.limit(count * 4);
+            RFileVectorTransfer.writeFully(channel, chunk);
+            offset += count;
+        }
+    }
+    
+    /**
+     * Read and validate the file header
+     * @param channel
+     *          the channel to read from
+     * @param typeCode
+     *          the type code that we expect
+     * @return
+     *          the number of values that follow the header
+     * @throws IOException
+     *          if the read fails or the header is bad
+     */
+    private static int readHeader(FileChannel channel, int typeCode)
+            throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        RFileVectorTransfer.readFully(channel, header);
+        if(header.getInt(0) != MAGIC_NUMBER ||
+           header.getInt(2 * 4) != typeCode)
+        {
+            throw new IOException("R did not write a valid transfer file");
+        }
+        
+        return header.getInt(3 * 4);
+    }
+    
+    /**
+     * Fill the given array with doubles read a chunk at a time
+     * @param channel
+     *          the channel to read from
+     * @param values
+     *          the array to fill
+     * @throws IOException
+     *          if the read fails
+     */
+    private static void readDoubles(FileChannel channel, double[] values)
+            throws IOException
+    {
+        ByteBuffer chunk = RFileVectorTransfer.allocateChunk();
+        DoubleBuffer doubleChunk = chunk.asDoubleBuffer();
+        int offset = 0;
+        while(offset < values.length)
+        {
+            int count = Math.min(doubleChunk.capacity(), values.length - offset);
+            chunk.clear();
+            chunk.limit(count * 8);
+            RFileVectorTransfer.readFully(channel, chunk);
+            doubleChunk.clear();
+            doubleChunk.get(values, offset, count);
+            offset += count;
+        }
+    }
+    
+    /**
+     * Fill the given array with ints read a chunk at a time
+     * @param channel
+     *          the channel to read from
+     * @param values
+     *          the array to fill
+     * @throws IOException
+     *          if the read fails
+     */
+    private static void readInts(FileChannel channel, int[] values)
+            throws IOException
+    {
+        ByteBuffer chunk = RFileVectorTransfer.allocateChunk();
+        IntBuffer intChunk = chunk.asIntBuffer();
+        int offset = 0;
+        while(offset < values.length)
+        {
+            int count = Math.min(intChunk.capacity(), values.length - offset);
+            chunk.clear();
+            chunk.limit(count * 4);
+            RFileVectorTransfer.readFully(channel, chunk);
+            intChunk.clear();
+            intChunk.get(values, offset, count);
+            offset += count;
+        }
+    }
+    
+    /**
+     * Allocate a little endian buffer to stream values through
+     * @return
+     *          the buffer
+     */
+    private static ByteBuffer allocateChunk()
+    {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE_BYTES);
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        return chunk;
+    }
+    
+    /**
+     * Write all of the remaining bytes in the buffer
+     * @param channel
+     *          the channel to write to
+     * @param buffer
+     *          the buffer
+     * @throws IOException
+     *          if the write fails
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+    
+    /**
+     * Fill the remaining space in the buffer
+     * @param channel
+     *          the channel to read from
+     * @param buffer
+     *          the buffer
+     * @throws IOException
+     *          if the read fails or we hit the end of the file first
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            if(channel.read(buffer) == -1)
+            {
+                throw new IOException("transfer file ended unexpectedly");
+            }
+        }
+    }
+    
+    /**
+     * Have R write the given expression to the transfer file and open the
+     * result for reading
+     * @param valueExpressionString
+     *          the R expression for the values
+     * @param transferFile
+     *          the transfer file
+     * @return
+     *          the open stream which the caller must close
+     * @throws IOException
+     *          if the file can't be opened
+     * @throws RException
+     *          if R fails to write the file
+     */
+    private FileInputStream fetchToTransferFile(
+            String valueExpressionString,
+            File transferFile)
+            throws IOException, RException
+    {
+        REXP result = this.rInterface.evaluateCommand(new SilentRQueryCommand(
+                String.format(
+                        WRITE_COMMAND_TEMPLATE,
+                        valueExpressionString,
+                        RFileVectorTransfer.toRFileName(transferFile))));
+        if(result == null)
+        {
+            throw new RException(
+                    "R failed to write the transfer file for: " +
+                    valueExpressionString);
+        }
+        
+        return new FileInputStream(transferFile);
+    }
+    
+    /**
+     * Have R read the given transfer file into a variable
+     * @param variableName
+     *          the variable
+     * @param transferFile
+     *          the file
+     * @throws RException
+     *          if R fails to read the file
+     */
+    private void assignFromTransferFile(String variableName, File transferFile)
+            throws RException
+    {
+        // we use evaluateCommand rather than evaluateCommandNoReturn
+        // because we need R to be finished with the file before we delete
+        // it. the assignment evaluates to TRUE so that the values aren't
+        // copied back to us
+        REXP result = this.rInterface.evaluateCommand(new SilentRCommand(
+                new RUnreturnedAssignmentCommand(
+                        variableName,
+                        String.format(
+                                READ_EXPRESSION_TEMPLATE,
+                                RFileVectorTransfer.toRFileName(transferFile)))));
+        if(result == null)
+        {
+            throw new RException(
+                    "R failed to read the transfer file into: " +
+                    variableName);
+        }
+    }
+    
+    /**
+     * Convert the file into a quoted R file name string
+     * @param file
+     *          the file
+     * @return
+     *          the R string
+     */
+    private static String toRFileName(File file)
+    {
+        return RUtilities.javaStringToRString(file.getAbsolutePath());
+    }
+    
+    /**
+     * Delete the transfer file. If it's still held open (eg. by R after a
+     * failed command) we leave it until exit
+     * @param transferFile
+     *          the file to delete
+     */
+    private static void deleteTransferFile(File transferFile)
+    {
+        if(!transferFile.delete())
+        {
+            LOG.fine(
+                    "failed to delete transfer file immediately. " +
+                    "will delete on exit: " + transferFile);
+            transferFile.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.jax.r.RException;
+import org.jax.r.RUtilities;
+import org.rosuda.JRI.REXP;
+
+/**
+ * Hands out unique R identifiers. Candidates are checked against the
+ * {@link RWorkspaceCatalog}'s cached view of the workspace and against
+ * identifiers that have already been handed out, and then the surviving
+ * candidates are verified with a single R call (which also catches names
+ * visible from attached packages). Allocation is synchronized so two
+ * threads can't be given the same identifier.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RIdentifierAllocator
+{
+    /**
+     * the identifier that we use if we're given an empty one
+     */
+    private static final String DEFAULT_STARTING_IDENTIFIER = "object";
+    
+    /**
+     * the number of candidates we verify in each R call
+     */
+    private static final int CANDIDATE_BATCH_SIZE = 16;
+    
+    /**
+     * template (%s is the candidate vector) for finding the candidates
+     * that don't exist yet
+     */
+    private static final String FREE_CANDIDATES_COMMAND_TEMPLATE =
+        "local({" +
+        ".candidates <- %s; " +
+        ".candidates[!as.logical(sapply(.candidates, exists, envir=globalenv()))]})";
+    
+    /**
+     * the workspace catalog for the R interface
+     */
+    private final RWorkspaceCatalog catalog;
+    
+    /**
+     * identifiers that we've handed out which may not exist in R yet
+     */
+    private final Set<String> reservedIdentifiers;
+    
+    /**
+     * Constructor. Use {@link #getAllocator(RInterface)} to share a single
+     * allocator per R interface (which you need to do if you want to avoid
+     * duplicates across threads)
+     * @param catalog
+     *          the catalog to check candidates against
+     */
+    public RIdentifierAllocator(RWorkspaceCatalog catalog)
+    {
+        this.catalog = catalog;
+        this.reservedIdentifiers = new HashSet<String>();
+    }
+    
+    /**
+     * Get the shared allocator for the given R interface (creating it if
+     * needed)
+     * @param rInterface
+     *          the R interface
+     * @return
+     *          the allocator
+     */
+    public static RIdentifierAllocator getAllocator(RInterface rInterface)
+    {
+        // the catalog holds the shared allocator so that we don't keep the
+        // R interface alive
+        return RWorkspaceCatalog.getCatalog(rInterface).getSharedIdentifierAllocator();
+    }
+    
+    /**
+     * Allocate a unique identifier that starts with the given string. The
+     * identifier stays reserved until it shows up in the workspace or
+     * {@link #releaseIdentifier(String)} is called
+     * @param startingIdentifier
+     *          the starting string to use
+     * @return
+     *          the unique identifier. the starting identifier is used as
+     *          is if it's free, otherwise we append 0, 1, 2 ... until we
+     *          find one that's free
+     * @throws RException
+     *          if we have trouble talking to R
+     */
+    public synchronized String allocateIdentifier(String startingIdentifier)
+            throws RException
+    {
+        String freeIdentifier = this.findUniqueIdentifier(startingIdentifier);
+        this.reservedIdentifiers.add(freeIdentifier);
+        return freeIdentifier;
+    }
+    
+    /**
+     * Like {@link #allocateIdentifier(String)} except that the identifier
+     * isn't reserved. This is useful for suggesting a name which may or may
+     * not end up being used, but there's no guarantee that another caller
+     * won't be handed the same identifier.
+     * @param startingIdentifier
+     *          the starting string to use
+     * @return
+     *          the unique identifier
+     * @throws RException
+     *          if we have trouble talking to R
+     */
+    public synchronized String findUniqueIdentifier(String startingIdentifier)
+            throws RException
+    {
+        startingIdentifier = startingIdentifier.trim();
+        if(startingIdentifier.length() == 0)
+        {
+            startingIdentifier = DEFAULT_STARTING_IDENTIFIER;
+        }
+        
+        RIdentifierIndex index = this.catalog.getIdentifierIndex();
+        this.pruneReservations(index);
+        
+        int nextSuffix = -1;
+        while(true)
+        {
+            // gather a batch of candidates that are free as far as our
+            // cached view is concerned
+            List<String> candidates = new ArrayList<String>(CANDIDATE_BATCH_SIZE);
+            while(candidates.size() < CANDIDATE_BATCH_SIZE)
+            {
+                String candidate = nextSuffix == -1 ?
+                                   startingIdentifier :
+                                   startingIdentifier + nextSuffix;
+                nextSuffix++;
+                
+                if(!index.contains(candidate) &&
+                   !this.reservedIdentifiers.contains(candidate))
+                {
+                    candidates.add(candidate);
+                }
+            }
+            
+            // verify them all with one R call and take the 1st survivor
+            String freeIdentifier = this.findFirstFreeCandidate(candidates);
+            if(freeIdentifier != null)
+            {
+                return freeIdentifier;
+            }
+            else
+            {
+                // our cached view must be out of date (or the candidates
+                // are visible from attached packages). the suffix keeps
+                // moving forward either way
+                this.catalog.invalidateAll();
+                index = this.catalog.getIdentifierIndex();
+                this.pruneReservations(index);
+            }
+        }
+    }
+    
+    /**
+     * Release an identifier that was reserved by
+     * {@link #allocateIdentifier(String)} but which won't be used after all.
+     * You don't need to call this for identifiers that end up being created
+     * @param identifier
+     *          the identifier to release
+     */
+    public synchronized void releaseIdentifier(String identifier)
+    {
+        this.reservedIdentifiers.remove(identifier);
+    }
+    
+    /**
+     * Drop any reservations for identifiers that now exist (the workspace
+     * listing takes care of those from here on)
+     * @param index
+     *          the current workspace index
+     */
+    private void pruneReservations(RIdentifierIndex index)
+    {
+        Iterator<String> reservedIter = this.reservedIdentifiers.iterator();
+        while(reservedIter.hasNext())
+        {
+            if(index.contains(reservedIter.next()))
+            {
+                reservedIter.remove();
+            }
+        }
+    }
+    
+    /**
+     * Ask R which of the candidates don't exist
+     * @param candidates
+     *          the candidates in order of preference
+     * @return
+     *          the 1st free candidate or null if they're all taken
+     * @throws RException
+     *          if R fails to evaluate the check (eg. because the
+     *          candidates aren't valid R strings)
+     */
+    private String findFirstFreeCandidate(List<String> candidates)
+            throws RException
+    {
+        REXP freeCandidatesExpression =
+            this.catalog.getRInterface().evaluateCommand(new SilentRQueryCommand(
+                    String.format(
+                            FREE_CANDIDATES_COMMAND_TEMPLATE,
+                            RUtilities.stringListToRVector(candidates))));
+        if(freeCandidatesExpression == null)
+        {
+            throw new RException(
+                    "failed to check which identifiers are free: " +
+                    candidates);
+        }
+        
+        String[] freeCandidates = freeCandidatesExpression.asStringArray();
+        if(freeCandidates == null || freeCandidates.length == 0)
+        {
+            return null;
+        }
+        else
+        {
+            return freeCandidates[0];
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * A sorted index over top level R identifiers for answering ownership
+ * questions. Ownership follows the dot prefix convention used by
+ * {@link RObject}: "a.b" and "a.b.c" are both owned by "a", but only "a.b"
+ * is a direct child of "a". Because the index is sorted all of an object's
+ * descendants sit in one contiguous range so we can find them without
+ * scanning every identifier.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RIdentifierIndex
+{
+    /**
+     * the ownership separator
+     */
+    private static final char OWNERSHIP_SEPARATOR = '.';
+    
+    /**
+     * a character that sorts after any character that we'll see in an
+     * identifier. used to find the end of a prefix range
+     */
+    private static final char MAX_CHAR = Character.MAX_VALUE;
+    
+    /**
+     * the sorted identifiers
+     */
+    private final TreeSet<String> identifiers;
+    
+    /**
+     * Constructor
+     * @param identifiers
+     *          the identifiers to index
+     */
+    public RIdentifierIndex(Collection<String> identifiers)
+    {
+        this.identifiers = new TreeSet<String>(identifiers);
+    }
+    
+    /**
+     * Get all of the identifiers in sorted order
+     * @return
+     *          the identifiers (unmodifiable)
+     */
+    public SortedSet<String> getIdentifiers()
+    {
+        return Collections.unmodifiableSortedSet(this.identifiers);
+    }
+    
+    /**
+     * Determine if the given identifier is in this index
+     * @param identifier
+     *          the identifier
+     * @return
+     *          true iff it's indexed
+     */
+    public boolean contains(String identifier)
+    {
+        return this.identifiers.contains(identifier);
+    }
+    
+    /**
+     * Get all identifiers owned (directly or indirectly) by the given owner
+     * @param ownerIdentifier
+     *          the owner
+     * @return
+     *          the descendants in sorted order (unmodifiable)
+     */
+    public SortedSet<String> getDescendants(String ownerIdentifier)
+    {
+        String prefix = ownerIdentifier + OWNERSHIP_SEPARATOR;
+        return Collections.unmodifiableSortedSet(this.identifiers.subSet(
+                prefix,
+                prefix + MAX_CHAR));
+    }
+    
+    /**
+     * Get the identifiers directly owned by the given owner. We hop over
+     * each child's own descendants rather than walking through them so
+     * this only costs a lookup per child.
+     * @param ownerIdentifier
+     *          the owner
+     * @return
+     *          the children in sorted order
+     */
+    public List<String> getChildren(String ownerIdentifier)
+    {
+        String prefix = ownerIdentifier + OWNERSHIP_SEPARATOR;
+        String rangeEnd = prefix + MAX_CHAR;
+        List<String> children = new ArrayList<String>();
+        
+        SortedSet<String> remaining = this.identifiers.subSet(prefix, rangeEnd);
+        while(!remaining.isEmpty())
+        {
+            String first = remaining.first();
+            int separatorIndex = first.indexOf(
+                    OWNERSHIP_SEPARATOR,
+                    prefix.length());
+            if(separatorIndex == -1)
+            {
+                // a direct child. move on to whatever comes next
+                children.add(first);
+                remaining = this.identifiers.subSet(first + '\0', rangeEnd);
+            }
+            else
+            {
+                // a grandchild (or deeper) so skip the whole subtree
+                String subtreePrefix = first.substring(0, separatorIndex + 1);
+                remaining = this.identifiers.subSet(
+                        subtreePrefix + MAX_CHAR,
+                        rangeEnd);
+            }
+        }
+        
+        return children;
+    }
+}
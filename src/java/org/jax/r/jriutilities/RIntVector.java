@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.BitSet;
+
+import org.rosuda.JRI.REXP;
+
+/**
+ * An NA aware R integer vector backed by a primitive int array.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RIntVector extends RPrimitiveVector
+{
+    /**
+     * The value that R uses to represent an integer NA
+     */
+    public static final int NA = Integer.MIN_VALUE;
+    
+    /**
+     * @see #getValues()
+     */
+    private final int[] values;
+    
+    /**
+     * Constructor. The given array is wrapped rather than copied.
+     * @param values
+     *          the values with NA's represented as {@link #NA}
+     */
+    public RIntVector(int[] values)
+    {
+        super(RIntVector.createNAMask(values));
+        this.values = values;
+    }
+    
+    /**
+     * Create an int vector from the given R expression. If the expression
+     * is already an integer vector its array is used directly (no copy).
+     * Otherwise the values are converted from doubles with NaN's becoming
+     * NA.
+     * @param rExpression
+     *          the expression
+     * @return
+     *          the vector or null if the expression can't be converted
+     */
+    public static RIntVector fromREXP(REXP rExpression)
+    {
+        int[] intValues = rExpression.asIntArray();
+        if(intValues == null)
+        {
+            double[] doubleValues = rExpression.asDoubleArray();
+            if(doubleValues == null)
+            {
+                return null;
+            }
+            else
+            {
+                intValues = new int[doubleValues.length];
+                for(int i = 0; i < doubleValues.length; i++)
+                {
+                    if(Double.isNaN(doubleValues[i]))
+                    {
+                        intValues[i] = NA;
+                    }
+                    else
+                    {
+                        intValues[i] = (int)doubleValues[i];
+                    }
+                }
+            }
+        }
+        
+        return new RIntVector(intValues);
+    }
+    
+    /**
+     * Build the NA mask for the given values
+     * @param values
+     *          the values
+     * @return
+     *          the mask
+     */
+    private static BitSet createNAMask(int[] values)
+    {
+        BitSet naMask = new BitSet();
+        for(int i = 0; i < values.length; i++)
+        {
+            if(values[i] == NA)
+            {
+                naMask.set(i);
+            }
+        }
+        
+        return naMask;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return this.values.length;
+    }
+    
+    /**
+     * Get the value at the given index
+     * @param index
+     *          the zero based index
+     * @return
+     *          the value ({@link #NA} if the element is NA)
+     */
+    public int get(int index)
+    {
+        return this.values[index];
+    }
+    
+    /**
+     * Getter for the backing array. This is not a copy so don't modify it.
+     * @return the values
+     */
+    public int[] getValues()
+    {
+        return this.values;
+    }
+    
+    /**
+     * Convert to a boxed array where NA's are represented as null
+     * @return
+     *          the boxed array
+     */
+    public Integer[] toBoxedArray()
+    {
+        Integer[] boxedValues = new Integer[this.values.length];
+        for(int i = 0; i < this.values.length; i++)
+        {
+            if(this.values[i] != NA)
+            {
+                boxedValues[i] = Integer.valueOf(this.values[i]);
+            }
+        }
+        
+        return boxedValues;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.BitSet;
+
+import org.rosuda.JRI.REXP;
+
+/**
+ * An NA aware R logical vector backed by the primitive int array that JRI
+ * uses for logicals (0 for FALSE, 1 for TRUE and anything else is NA).
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RLogicalVector extends RPrimitiveVector
+{
+    /**
+     * The int value that R uses to represent a logical NA
+     */
+    public static final int NA = Integer.MIN_VALUE;
+    
+    /**
+     * the int value for FALSE
+     */
+    private static final int FALSE_INT_VALUE = 0;
+    
+    /**
+     * the int value for TRUE
+     */
+    private static final int TRUE_INT_VALUE = 1;
+    
+    /**
+     * @see #getValues()
+     */
+    private final int[] values;
+    
+    /**
+     * Constructor. The given array is wrapped rather than copied.
+     * @param values
+     *          the values as 0 (FALSE), 1 (TRUE) or {@link #NA}
+     */
+    public RLogicalVector(int[] values)
+    {
+        super(RLogicalVector.createNAMask(values));
+        this.values = values;
+    }
+    
+    /**
+     * Constructor for a logical vector with no NA's
+     * @param values
+     *          the values
+     */
+    public RLogicalVector(boolean[] values)
+    {
+        this(RLogicalVector.toIntValues(values));
+    }
+    
+    /**
+     * Create a logical vector from the given R expression. The array that
+     * JRI gives us is used directly (no copy).
+     * @param rExpression
+     *          the expression
+     * @return
+     *          the vector or null if the expression can't be converted
+     */
+    public static RLogicalVector fromREXP(REXP rExpression)
+    {
+        int[] intValues = rExpression.asIntArray();
+        if(intValues == null)
+        {
+            return null;
+        }
+        else
+        {
+            return new RLogicalVector(intValues);
+        }
+    }
+    
+    /**
+     * Build the NA mask for the given values
+     * @param values
+     *          the values
+     * @return
+     *          the mask
+     */
+    private static BitSet createNAMask(int[] values)
+    {
+        BitSet naMask = new BitSet();
+        for(int i = 0; i < values.length; i++)
+        {
+            if(values[i] != FALSE_INT_VALUE && values[i] != TRUE_INT_VALUE)
+            {
+                naMask.set(i);
+            }
+        }
+        
+        return naMask;
+    }
+    
+    /**
+     * Convert booleans into the int form used by R
+     * @param values
+     *          the boolean values
+     * @return
+     *          the int values
+     */
+    private static int[] toIntValues(boolean[] values)
+    {
+        int[] intValues = new int[values.length];
+        for(int i = 0; i < values.length; i++)
+        {
+            intValues[i] = values[i] ? TRUE_INT_VALUE : FALSE_INT_VALUE;
+        }
+        
+        return intValues;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return this.values.length;
+    }
+    
+    /**
+     * Get the value at the given index
+     * @param index
+     *          the zero based index
+     * @return
+     *          true iff the element is TRUE (NA's give false so check
+     *          {@link #isNA(int)} if you care)
+     */
+    public boolean get(int index)
+    {
+        return this.values[index] == TRUE_INT_VALUE;
+    }
+    
+    /**
+     * Getter for the backing array. This is not a copy so don't modify it.
+     * @return the values as 0 (FALSE), 1 (TRUE) or NA
+     */
+    public int[] getValues()
+    {
+        return this.values;
+    }
+    
+    /**
+     * Convert to a boolean array. NA's are converted to false.
+     * @return
+     *          the boolean array
+     */
+    public boolean[] toBooleanArray()
+    {
+        boolean[] booleanValues = new boolean[this.values.length];
+        for(int i = 0; i < this.values.length; i++)
+        {
+            booleanValues[i] = (this.values[i] == TRUE_INT_VALUE);
+        }
+        
+        return booleanValues;
+    }
+}
@@ -20,7 +20,8 @@
 
 package org.jax.r.jriutilities;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.jax.r.RUtilities;
@@ -78,25 +79,113 @@ public class RObject
         return this.rInterface;
     }
     
+    /**
+     * Get the cached metadata for this object from the
+     * {@link RWorkspaceCatalog} for our R interface. The metadata is only
+     * fetched from R if the object has changed since it was last read.
+     * @return
+     *          the metadata or null if this isn't a top level object
+     */
+    public RObjectMetadata getMetadata()
+    {
+        return RWorkspaceCatalog.getCatalog(this.rInterface).getMetadata(
+                this.accessorExpressionString);
+    }
+    
+    /**
+     * Iterate through the rows of this object (which should be a matrix or
+     * data.frame) in fixed size blocks. Use this in place of reading whole
+     * columns when the object is too big to hold on the java heap at once.
+     * @param rowsPerBlock
+     *          the number of rows to fetch in each block
+     * @param prefetchNextBlock
+     *          if true the next block is requested from R while the caller
+     *          is processing the current block
+     * @return
+     *          the block iterator
+     */
+    public RRowBlockIterator rowBlockIterator(
+            int rowsPerBlock,
+            boolean prefetchNextBlock)
+    {
+        return new RRowBlockIterator(this, rowsPerBlock, prefetchNextBlock);
+    }
+    
+    /**
+     * Get all top level objects owned (directly or indirectly) by this
+     * object. Ownership is determined by dot prefix so "a.b" and "a.b.c"
+     * are owned by "a". This uses the sorted identifier index from the
+     * {@link RWorkspaceCatalog} rather than scanning the workspace listing.
+     * @return
+     *          the owned objects
+     */
+    public List<RObject> getOwnedObjects()
+    {
+        RIdentifierIndex index =
+            RWorkspaceCatalog.getCatalog(this.rInterface).getIdentifierIndex();
+        return this.toRObjects(index.getDescendants(
+                this.accessorExpressionString));
+    }
+    
+    /**
+     * Like {@link #getOwnedObjects()} except that only direct children are
+     * included (so "a.b" but not "a.b.c" for "a")
+     * @return
+     *          the child objects
+     */
+    public List<RObject> getChildObjects()
+    {
+        RIdentifierIndex index =
+            RWorkspaceCatalog.getCatalog(this.rInterface).getIdentifierIndex();
+        return this.toRObjects(index.getChildren(
+                this.accessorExpressionString));
+    }
+    
+    /**
+     * Create objects for the given identifiers using our R interface
+     * @param identifiers
+     *          the identifiers
+     * @return
+     *          the objects
+     */
+    private List<RObject> toRObjects(Collection<String> identifiers)
+    {
+        List<RObject> rObjects = new ArrayList<RObject>(identifiers.size());
+        for(String currIdentifier: identifiers)
+        {
+            rObjects.add(new RObject(this.rInterface, currIdentifier));
+        }
+        
+        return rObjects;
+    }
+    
     /**
      * Filter out any objects from the given list that aren't owned by this
-     * object.
+     * object. If you're starting from the whole workspace listing
+     * {@link #getOwnedObjects()} is cheaper.
      * @param rObjects
      *          the list that we're going to filter
      */
     protected void removeObjectsNotOwnedByThis(List<RObject> rObjects)
     {
+        // copy the keepers over rather than removing in place since
+        // removing through an iterator is linear for array lists
         String ownershipPrefix =
             this.getAccessorExpressionString() + ".";
-        Iterator<RObject> rObjectsIter = rObjects.iterator();
-        while(rObjectsIter.hasNext())
+        List<RObject> ownedRObjects = new ArrayList<RObject>();
+        for(RObject currRObject: rObjects)
         {
-            RObject currRObject = rObjectsIter.next();
-            if(!currRObject.getAccessorExpressionString().startsWith(ownershipPrefix))
+            if(currRObject.getAccessorExpressionString().startsWith(ownershipPrefix))
             {
-                rObjectsIter.remove();
+                ownedRObjects.add(currRObject);
             }
         }
+        
+        if(ownedRObjects.size() < rObjects.size())
+        {
+            rObjects.clear();
+            rObjects.addAll(ownedRObjects);
+        }
     }
 
     /**
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+/**
+ * Metadata describing a top level R object as returned by
+ * {@link JRIUtilityFunctions#getTopLevelObjectMetadata(RInterface, String)}
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RObjectMetadata
+{
+    /**
+     * @see #getName()
+     */
+    private final String name;
+    
+    /**
+     * @see #getRClasses()
+     */
+    private final String[] rClasses;
+    
+    /**
+     * @see #getDimensions()
+     */
+    private final int[] dimensions;
+    
+    /**
+     * @see #getNames()
+     */
+    private final String[] names;
+    
+    /**
+     * @see #getMode()
+     */
+    private final String mode;
+    
+    /**
+     * @see #getSizeInBytes()
+     */
+    private final long sizeInBytes;
+    
+    /**
+     * Constructor
+     * @param name
+     *          see {@link #getName()}
+     * @param rClasses
+     *          see {@link #getRClasses()}
+     * @param dimensions
+     *          see {@link #getDimensions()}
+     * @param names
+     *          see {@link #getNames()}
+     * @param mode
+     *          see {@link #getMode()}
+     * @param sizeInBytes
+     *          see {@link #getSizeInBytes()}
+     */
+    public RObjectMetadata(
+            String name,
+            String[] rClasses,
+            int[] dimensions,
+            String[] names,
+            String mode,
+            long sizeInBytes)
+    {
+        this.name = name;
+        this.rClasses = rClasses;
+        this.dimensions = dimensions;
+        this.names = names;
+        this.mode = mode;
+        this.sizeInBytes = sizeInBytes;
+    }
+    
+    /**
+     * Getter for the object's identifier
+     * @return the name
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+    
+    /**
+     * Getter for the R class vector (the result of "class(...)")
+     * @return the R classes
+     */
+    public String[] getRClasses()
+    {
+        return this.rClasses;
+    }
+    
+    /**
+     * Getter for the dimensions (the result of "dim(...)")
+     * @return the dimensions or null if the object has no dimensions
+     */
+    public int[] getDimensions()
+    {
+        return this.dimensions;
+    }
+    
+    /**
+     * Getter for the names of the object's components (the result of
+     * "names(...)"). To avoid pulling over huge name vectors this is only
+     * filled in for recursive objects like lists and data.frames
+     * @return the names or null
+     */
+    public String[] getNames()
+    {
+        return this.names;
+    }
+    
+    /**
+     * Getter for the name of the object that owns this object. Ownership
+     * follows the dot prefix convention used by {@link RObject} so the
+     * owner of "a.b.c" is "a.b"
+     * @return the owner's name or null if there isn't one
+     */
+    public String getOwnerName()
+    {
+        int lastDotIndex = this.name.lastIndexOf('.');
+        if(lastDotIndex <= 0)
+        {
+            return null;
+        }
+        else
+        {
+            return this.name.substring(0, lastDotIndex);
+        }
+    }
+    
+    /**
+     * Getter for the storage mode (the result of "mode(...)")
+     * @return the mode
+     */
+    public String getMode()
+    {
+        return this.mode;
+    }
+    
+    /**
+     * Getter for the estimated memory used by the object (the result of
+     * "object.size(...)")
+     * @return the size in bytes
+     */
+    public long getSizeInBytes()
+    {
+        return this.sizeInBytes;
+    }
+    
+    /**
+     * Determine if the given class is in this object's class vector. This
+     * is the java side equivalent of
+     * {@link JRIUtilityFunctions#inheritsRClass(RObject, String)} which
+     * doesn't require a trip to R.
+     * @param rClassName
+     *          the class name
+     * @return
+     *          true iff the object inherits the given class
+     */
+    public boolean inheritsRClass(String rClassName)
+    {
+        for(String currClass: this.rClasses)
+        {
+            if(currClass.equals(rClassName))
+            {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+}
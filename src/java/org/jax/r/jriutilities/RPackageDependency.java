@@ -113,7 +113,7 @@ public abstract class RPackageDependency
      */
     public String getInstalledVersion()
     {
-        RCommand getVersionCommand = new SilentRCommand(new RMethodInvocationCommand(
+        RCommand getVersionCommand = new SilentRQueryCommand(new RMethodInvocationCommand(
                 PACKAGE_DESC,
                 new RCommandParameter(
                         RUtilities.javaStringToRString(this.getPackageName())),
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jax.r.RAssignmentCommand;
+import org.jax.r.RCommandParameter;
+import org.jax.r.RException;
+import org.jax.r.RTransferPlanner;
+import org.jax.r.RUtilities;
+
+/**
+ * Creates {@link RCommandParameter}s for array values using whichever
+ * transfer path the {@link RTransferPlanner} picks. Small arrays become
+ * inline literals. Larger ones are moved into temporary R variables
+ * (directly or through {@link RFileVectorTransfer}) and the parameter just
+ * names the variable. Call {@link #removeTemporaryVariables()} once the
+ * commands that use the parameters have been evaluated.
+ * <p>
+ * Transfers don't go through command text, so each one is also recorded
+ * as the equivalent literal assignment (see
+ * {@link #recordTransfer(String, String)}). That way the command history,
+ * and any script exported from it, still creates the temporary variables
+ * that later commands refer to.
+ * </p>
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RParameterTransfer
+{
+    /**
+     * the prefix used for temporary variable names
+     */
+    private static final String TEMPORARY_VARIABLE_PREFIX = ".rjavaTransfer";
+    
+    /**
+     * the command that R evaluates when we record a transfer
+     */
+    private static final String TRANSFER_RECORD_COMMAND = "invisible(NULL)";
+    
+    private final RInterface rInterface;
+    
+    private final RTransferPlanner planner;
+    
+    private final RFileVectorTransfer fileTransfer;
+    
+    private final RVariableAssigner variableAssigner;
+    
+    private final List<String> temporaryVariables = new ArrayList<String>();
+    
+    /**
+     * Constructor which uses the default planner
+     * @param rInterface
+     *          the R interface
+     */
+    public RParameterTransfer(RInterface rInterface)
+    {
+        this(rInterface, RTransferPlanner.getDefaultPlanner());
+    }
+    
+    /**
+     * Constructor
+     * @param rInterface
+     *          the R interface
+     * @param planner
+     *          the planner to use
+     */
+    public RParameterTransfer(RInterface rInterface, RTransferPlanner planner)
+    {
+        this.rInterface = rInterface;
+        this.planner = planner;
+        this.fileTransfer = new RFileVectorTransfer(rInterface);
+        this.variableAssigner = new RVariableAssigner(rInterface);
+    }
+    
+    /**
+     * Create a numeric vector parameter
+     * @param name
+     *          the parameter name (can be null)
+     * @param values
+     *          the values
+     * @return
+     *          the parameter
+     * @throws RException
+     *          if the values need a transfer and it fails
+     */
+    public RCommandParameter createParameter(String name, double[] values)
+            throws RException
+    {
+        switch(this.planner.planTransfer(values))
+        {
+            case INLINE_LITERAL:
+                return new RCommandParameter(
+                        name,
+                        RUtilities.doubleArrayToRVector(values));
+            
+            case FILE_TRANSFER:
+            {
+                String variable = this.allocateTemporaryVariable();
+                this.fileTransfer.assignDoubles(variable, values);
+                this.recordTransfer(
+                        variable,
+                        RUtilities.doubleArrayToRVector(values));
+                return new RCommandParameter(name, variable);
+            }
+            
+            default:
+            {
+                String variable = this.allocateTemporaryVariable();
+                this.variableAssigner.assignDoubles(variable, values);
+                this.recordTransfer(
+                        variable,
+                        RUtilities.doubleArrayToRVector(values));
+                return new RCommandParameter(name, variable);
+            }
+        }
+    }
+    
+    /**
+     * Create an integer vector parameter
+     * @param name
+     *          the parameter name (can be null)
+     * @param values
+     *          the values
+     * @return
+     *          the parameter
+     * @throws RException
+     *          if the values need a transfer and it fails
+     */
+    public RCommandParameter createParameter(String name, int[] values)
+            throws RException
+    {
+        switch(this.planner.planTransfer(values))
+        {
+            case INLINE_LITERAL:
+                return new RCommandParameter(
+                        name,
+                        RUtilities.intArrayToRVector(values));
+            
+            case FILE_TRANSFER:
+            {
+                String variable = this.allocateTemporaryVariable();
+                this.fileTransfer.assignInts(variable, values);
+                this.recordTransfer(
+                        variable,
+                        RUtilities.intArrayToRVector(values));
+                return new RCommandParameter(name, variable);
+            }
+            
+            default:
+            {
+                String variable = this.allocateTemporaryVariable();
+                this.variableAssigner.assignInts(variable, values);
+                this.recordTransfer(
+                        variable,
+                        RUtilities.intArrayToRVector(values));
+                return new RCommandParameter(name, variable);
+            }
+        }
+    }
+    
+    /**
+     * Create a logical vector parameter
+     * @param name
+     *          the parameter name (can be null)
+     * @param values
+     *          the values
+     * @return
+     *          the parameter
+     * @throws RException
+     *          if the values need a transfer and it fails
+     */
+    public RCommandParameter createParameter(String name, boolean[] values)
+            throws RException
+    {
+        switch(this.planner.planTransfer(values))
+        {
+            case INLINE_LITERAL:
+                return new RCommandParameter(
+                        name,
+                        RUtilities.booleanArrayToRVector(values));
+            
+            case FILE_TRANSFER:
+            {
+                String variable = this.allocateTemporaryVariable();
+                this.fileTransfer.assignLogicals(variable, values);
+                this.recordTransfer(
+                        variable,
+                        RUtilities.booleanArrayToRVector(values));
+                return new RCommandParameter(name, variable);
+            }
+            
+            default:
+            {
+                String variable = this.allocateTemporaryVariable();
+                this.variableAssigner.assignLogicals(variable, values);
+                this.recordTransfer(
+                        variable,
+                        RUtilities.booleanArrayToRVector(values));
+                return new RCommandParameter(name, variable);
+            }
+        }
+    }
+    
+    /**
+     * Create a character vector parameter
+     * @param name
+     *          the parameter name (can be null)
+     * @param values
+     *          the values
+     * @return
+     *          the parameter
+     * @throws RException
+     *          if the values need a transfer and it fails
+     */
+    public RCommandParameter createParameter(String name, String[] values)
+            throws RException
+    {
+        if(this.planner.planTransfer(values) ==
+           RTransferPlanner.TransferPath.INLINE_LITERAL)
+        {
+            return new RCommandParameter(
+                    name,
+                    RUtilities.stringArrayToRVector(values));
+        }
+        else
+        {
+            String variable = this.allocateTemporaryVariable();
+            this.variableAssigner.assignStrings(variable, values);
+            this.recordTransfer(
+                    variable,
+                    RUtilities.stringArrayToRVector(values));
+            return new RCommandParameter(name, variable);
+        }
+    }
+    
+    /**
+     * Remove any temporary variables that were created for the parameters
+     * we've handed out
+     * @throws RException
+     *          if the removal fails
+     */
+    public void removeTemporaryVariables() throws RException
+    {
+        String[] variables;
+        synchronized(this.temporaryVariables)
+        {
+            if(this.temporaryVariables.isEmpty())
+            {
+                return;
+            }
+            
+            variables = this.temporaryVariables.toArray(
+                    new String[this.temporaryVariables.size()]);
+            this.temporaryVariables.clear();
+        }
+        
+        this.rInterface.evaluateCommandNoReturn(new SilentRCommand(
+                "rm(list=" + RUtilities.stringArrayToRVector(variables) +
+                ", envir=globalenv())"));
+        
+        RIdentifierAllocator allocator =
+            RIdentifierAllocator.getAllocator(this.rInterface);
+        for(String variable: variables)
+        {
+            allocator.releaseIdentifier(variable);
+        }
+    }
+    
+    /**
+     * Record a transfer in the command history as the literal assignment
+     * that it stands for. R doesn't parse the literal, it just evaluates a
+     * no-op, but listeners that show or record commands see the
+     * assignment
+     * @param variable
+     *          the variable that the values were transferred to
+     * @param literal
+     *          the R literal for the transferred values
+     * @throws RException
+     *          if we can't talk to R
+     */
+    private void recordTransfer(String variable, String literal)
+            throws RException
+    {
+        this.rInterface.evaluateCommandNoReturn(new RScriptExpressionCommand(
+                TRANSFER_RECORD_COMMAND,
+                new RAssignmentCommand(variable, literal).getCommandText()));
+    }
+    
+    /**
+     * Allocate a new temporary variable
+     * @return
+     *          the variable name
+     * @throws RException
+     *          if we can't talk to R
+     */
+    private String allocateTemporaryVariable() throws RException
+    {
+        String variable = RIdentifierAllocator.getAllocator(
+                this.rInterface).allocateIdentifier(TEMPORARY_VARIABLE_PREFIX);
+        synchronized(this.temporaryVariables)
+        {
+            this.temporaryVariables.add(variable);
+        }
+        return variable;
+    }
+}
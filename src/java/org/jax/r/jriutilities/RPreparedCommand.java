@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jax.r.RCommand;
+import org.jax.r.RException;
+import org.jax.r.RUtilities;
+import org.rosuda.JRI.REXP;
+
+/**
+ * A method invocation that is parsed by R once and can then be evaluated
+ * over and over with different argument values, sort of like a JDBC
+ * prepared statement. When the command is prepared the call is stored on
+ * the R side as a language object in a private environment (whose parent
+ * is the global environment) along with the argument variables, so none
+ * of it shows up in the user's workspace or in save.image(). The private
+ * environments live in an environment attached to the search path as
+ * {@value #PREPARED_ENVIRONMENTS_NAME}.
+ * <p>
+ * Binding a vector argument assigns the value straight to R (see
+ * {@link RVariableAssigner}) and then
+ * moves it into the private environment, so the only command text that R
+ * has to parse for each evaluation is a short constant eval(...) call no
+ * matter how large the arguments are. Evaluations are issued as plain
+ * {@link SilentRCommand}s so the {@link RWorkspaceCatalog} treats anything
+ * the called function does to the workspace as a change.
+ * </p>
+ * <p>
+ * Evaluations go through the same queue as all other commands so they're
+ * ordered with respect to them, but a prepared command itself should only
+ * be used from one thread at a time. Call {@link #close()} to remove the
+ * R side environment once you're done with it.
+ * </p>
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RPreparedCommand
+{
+    /**
+     * the name that the environment holding all of the prepared commands'
+     * environments is attached under
+     */
+    public static final String PREPARED_ENVIRONMENTS_NAME = "rjava:prepared";
+    
+    /**
+     * the prefix for the name of each command's environment
+     */
+    private static final String ENVIRONMENT_IDENTIFIER_PREFIX = ".prepared";
+    
+    /**
+     * the identifier of the call within a command's environment
+     */
+    private static final String CALL_IDENTIFIER = ".call";
+    
+    /**
+     * the prefix (before the argument number) for argument identifiers
+     * within a command's environment
+     */
+    private static final String ARGUMENT_IDENTIFIER_PREFIX = ".arg";
+    
+    /**
+     * the prefix for the global variable that binary bindings pass through
+     */
+    private static final String TRANSFER_IDENTIFIER_PREFIX = ".rjavaPreparedTransfer";
+    
+    /**
+     * used to give every prepared command its own environment name
+     */
+    private static final AtomicInteger ENVIRONMENT_COUNTER = new AtomicInteger();
+    
+    private final RInterface rInterface;
+    
+    private final RVariableAssigner variableAssigner;
+    
+    private final String methodName;
+    
+    private final String[] parameterNames;
+    
+    /**
+     * the R expression for this command's private environment
+     */
+    private final String environmentExpression;
+    
+    private final String environmentIdentifier;
+    
+    private final boolean[] argumentBound;
+    
+    private final RCommand evaluateCommand;
+    
+    /**
+     * the global variable that binary bindings pass through on their way
+     * into the private environment. allocated on first use
+     */
+    private String transferIdentifier = null;
+    
+    private boolean closed = false;
+    
+    /**
+     * Prepare a method invocation
+     * @param rInterface
+     *          the R interface to prepare the command in
+     * @param methodName
+     *          the name of the R function to call
+     * @param parameterNames
+     *          the parameter names in the order they should be passed.
+     *          Use null for positional parameters
+     * @throws RException
+     *          if R fails to prepare the call
+     */
+    public RPreparedCommand(
+            RInterface rInterface,
+            String methodName,
+            String... parameterNames)
+            throws RException
+    {
+        this.rInterface = rInterface;
+        this.variableAssigner = new RVariableAssigner(rInterface);
+        this.methodName = methodName;
+        this.parameterNames = parameterNames.clone();
+        this.argumentBound = new boolean[parameterNames.length];
+        
+        String quotedEnvironmentsName = RUtilities.javaStringToRString(
+                PREPARED_ENVIRONMENTS_NAME);
+        this.environmentIdentifier =
+            ENVIRONMENT_IDENTIFIER_PREFIX +
+            ENVIRONMENT_COUNTER.incrementAndGet();
+        this.environmentExpression =
+            "get(" +
+            RUtilities.javaStringToRString(this.environmentIdentifier) +
+            ", envir=as.environment(" + quotedEnvironmentsName + "))";
+        
+        StringBuilder callText = new StringBuilder(methodName);
+        callText.append('(');
+        for(int i = 0; i < parameterNames.length; i++)
+        {
+            if(i > 0)
+            {
+                callText.append(", ");
+            }
+            if(parameterNames[i] != null)
+            {
+                callText.append(parameterNames[i]).append('=');
+            }
+            callText.append(RPreparedCommand.getArgumentIdentifier(i));
+        }
+        callText.append(')');
+        
+        // this is the only time R parses the call. we wait for R so that
+        // a bad call is reported here rather than on the 1st evaluation
+        REXP prepareResult = this.rInterface.evaluateCommand(new SilentRCommand(
+                "local({" +
+                "if(!(" + quotedEnvironmentsName + " %in% search())) " +
+                "attach(NULL, name=" + quotedEnvironmentsName + "); " +
+                ".env <- new.env(parent=globalenv()); " +
+                "assign(" +
+                RUtilities.javaStringToRString(CALL_IDENTIFIER) +
+                ", quote(" + callText + "), envir=.env); " +
+                "assign(" +
+                RUtilities.javaStringToRString(this.environmentIdentifier) +
+                ", .env, envir=as.environment(" + quotedEnvironmentsName + ")); " +
+                "TRUE})"));
+        if(prepareResult == null)
+        {
+            throw new RException(
+                    "failed to prepare the " + methodName + " call");
+        }
+        
+        // this isn't a SilentRQueryCommand since the called function can
+        // do anything to the workspace
+        this.evaluateCommand = new SilentRCommand(
+                "local({.env <- " + this.environmentExpression + "; " +
+                "eval(.env$" + CALL_IDENTIFIER + ", .env)})");
+    }
+
+    /**
+     * Getter for the name of the R function that we call
+     * @return the method name
+     */
+    public String getMethodName()
+    {
+        return this.methodName;
+    }
+    
+    /**
+     * Getter for the number of parameters
+     * @return the parameter count
+     */
+    public int getParameterCount()
+    {
+        return this.parameterNames.length;
+    }
+    
+    /**
+     * Bind a numeric vector to the given parameter
+     * @param parameterIndex
+     *          the zero based parameter index
+     * @param values
+     *          the values
+     * @throws RException
+     *          if the assignment fails
+     */
+    public void bindDoubles(int parameterIndex, double[] values)
+            throws RException
+    {
+        this.checkOpen();
+        String transferIdentifier = this.getTransferIdentifier();
+        this.variableAssigner.assignDoubles(transferIdentifier, values);
+        this.moveIntoEnvironment(parameterIndex, transferIdentifier);
+    }
+    
+    /**
+     * Bind an integer vector to the given parameter
+     * @param parameterIndex
+     *          the zero based parameter index
+     * @param values
+     *          the values
+     * @throws RException
+     *          if the assignment fails
+     */
+    public void bindInts(int parameterIndex, int[] values)
+            throws RException
+    {
+        this.checkOpen();
+        String transferIdentifier = this.getTransferIdentifier();
+        this.variableAssigner.assignInts(transferIdentifier, values);
+        this.moveIntoEnvironment(parameterIndex, transferIdentifier);
+    }
+    
+    /**
+     * Bind a logical vector to the given parameter
+     * @param parameterIndex
+     *          the zero based parameter index
+     * @param values
+     *          the values
+     * @throws RException
+     *          if the assignment fails
+     */
+    public void bindLogicals(int parameterIndex, boolean[] values)
+            throws RException
+    {
+        this.checkOpen();
+        String transferIdentifier = this.getTransferIdentifier();
+        this.variableAssigner.assignLogicals(transferIdentifier, values);
+        this.moveIntoEnvironment(parameterIndex, transferIdentifier);
+    }
+    
+    /**
+     * Bind a character vector to the given parameter
+     * @param parameterIndex
+     *          the zero based parameter index
+     * @param values
+     *          the values
+     * @throws RException
+     *          if the assignment fails
+     */
+    public void bindStrings(int parameterIndex, String[] values)
+            throws RException
+    {
+        this.checkOpen();
+        String transferIdentifier = this.getTransferIdentifier();
+        this.variableAssigner.assignStrings(transferIdentifier, values);
+        this.moveIntoEnvironment(parameterIndex, transferIdentifier);
+    }
+    
+    /**
+     * Bind the result of an R expression to the given parameter. Unlike the
+     * other bind functions this does need R to parse the expression so
+     * it's best kept for short things like identifiers. The expression is
+     * evaluated in the global environment
+     * @param parameterIndex
+     *          the zero based parameter index
+     * @param rExpression
+     *          the R expression
+     * @throws RException
+     *          if the assignment fails
+     */
+    public void bindExpression(int parameterIndex, String rExpression)
+            throws RException
+    {
+        this.checkOpen();
+        this.assignArgument(parameterIndex, rExpression, "");
+    }
+    
+    /**
+     * Evaluate the call using the currently bound arguments
+     * @return
+     *          the result of the call
+     * @throws RException
+     *          if an argument hasn't been bound or the evaluation fails
+     */
+    public REXP evaluate() throws RException
+    {
+        this.checkAllBound();
+        return this.rInterface.evaluateCommand(this.evaluateCommand);
+    }
+    
+    /**
+     * Like {@link #evaluate()} but doesn't wait for or return the result
+     * @throws RException
+     *          if an argument hasn't been bound or the evaluation fails
+     */
+    public void evaluateNoReturn() throws RException
+    {
+        this.checkAllBound();
+        this.rInterface.evaluateCommandNoReturn(this.evaluateCommand);
+    }
+    
+    /**
+     * Remove the R side environment. The command can't be used after it's
+     * been closed
+     * @throws RException
+     *          if the removal fails
+     */
+    public void close() throws RException
+    {
+        if(!this.closed)
+        {
+            this.closed = true;
+            
+            this.rInterface.evaluateCommandNoReturn(new SilentRCommand(
+                    "rm(list=" +
+                    RUtilities.javaStringToRString(this.environmentIdentifier) +
+                    ", envir=as.environment(" +
+                    RUtilities.javaStringToRString(PREPARED_ENVIRONMENTS_NAME) +
+                    "))"));
+            
+            if(this.transferIdentifier != null)
+            {
+                RIdentifierAllocator.getAllocator(this.rInterface).releaseIdentifier(
+                        this.transferIdentifier);
+            }
+        }
+    }
+    
+    /**
+     * Get the identifier for the given argument within the private
+     * environment
+     * @param parameterIndex
+     *          the zero based parameter index
+     * @return
+     *          the identifier
+     */
+    private static String getArgumentIdentifier(int parameterIndex)
+    {
+        return ARGUMENT_IDENTIFIER_PREFIX + (parameterIndex + 1);
+    }
+    
+    /**
+     * Make sure that the command hasn't been closed
+     */
+    private void checkOpen()
+    {
+        if(this.closed)
+        {
+            throw new IllegalStateException(
+                    "can't bind arguments to a closed command");
+        }
+    }
+    
+    /**
+     * Get the global variable that binary bindings pass through, allocating
+     * it if needed
+     * @return
+     *          the identifier
+     * @throws RException
+     *          if the allocation fails
+     */
+    private String getTransferIdentifier() throws RException
+    {
+        if(this.transferIdentifier == null)
+        {
+            this.transferIdentifier = RIdentifierAllocator.getAllocator(
+                    this.rInterface).allocateIdentifier(
+                            TRANSFER_IDENTIFIER_PREFIX);
+        }
+        return this.transferIdentifier;
+    }
+    
+    /**
+     * Move a value that was assigned to the given global variable into the
+     * private environment as the given argument
+     * @param parameterIndex
+     *          the zero based parameter index
+     * @param transferIdentifier
+     *          the global variable holding the value
+     * @throws RException
+     *          if R fails to move the value
+     */
+    private void moveIntoEnvironment(
+            int parameterIndex,
+            String transferIdentifier)
+            throws RException
+    {
+        this.assignArgument(
+                parameterIndex,
+                transferIdentifier,
+                "rm(" + transferIdentifier + "); ");
+    }
+    
+    /**
+     * Assign the value of the given expression to an argument in the
+     * private environment. We wait for R so that the argument is only
+     * marked as bound once the value is really there. The argument stays
+     * unbound if the assignment fails so that a later evaluation can't
+     * silently use the old value
+     * @param parameterIndex
+     *          the zero based parameter index
+     * @param rExpression
+     *          the R expression for the value (evaluated in the global
+     *          environment)
+     * @param cleanupCommands
+     *          R commands (each terminated with "; ") to run after the
+     *          assignment
+     * @throws RException
+     *          if the assignment fails
+     */
+    private void assignArgument(
+            int parameterIndex,
+            String rExpression,
+            String cleanupCommands)
+            throws RException
+    {
+        this.argumentBound[parameterIndex] = false;
+        
+        // the command evaluates to TRUE rather than the value so that the
+        // value isn't copied back to us
+        REXP result = this.rInterface.evaluateCommand(new SilentRCommand(
+                "{assign(" +
+                RUtilities.javaStringToRString(
+                        RPreparedCommand.getArgumentIdentifier(parameterIndex)) +
+                ", " + rExpression +
+                ", envir=" + this.environmentExpression + "); " +
+                cleanupCommands +
+                "TRUE}"));
+        if(result == null)
+        {
+            throw new RException(
+                    "failed to bind parameter " + (parameterIndex + 1) +
+                    " of prepared " + this.methodName + " call");
+        }
+        
+        this.argumentBound[parameterIndex] = true;
+    }
+    
+    /**
+     * Make sure that all of the arguments have been bound
+     * @throws RException
+     *          if they haven't
+     */
+    private void checkAllBound() throws RException
+    {
+        if(this.closed)
+        {
+            throw new IllegalStateException(
+                    "can't evaluate a closed command");
+        }
+        
+        for(int i = 0; i < this.argumentBound.length; i++)
+        {
+            if(!this.argumentBound[i])
+            {
+                throw new RException(
+                        "parameter " + (i + 1) + " of prepared " +
+                        this.methodName + " call has not been bound");
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.BitSet;
+
+/**
+ * Base class for the NA aware primitive vector types. Values are kept in a
+ * primitive array (wrapped, not copied, when it comes from JRI) and NA's
+ * are tracked in a bitmap so that we don't need boxed objects just to be
+ * able to represent NA as null.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public abstract class RPrimitiveVector
+{
+    /**
+     * the NA mask. bit i is set iff element i is NA
+     */
+    private final BitSet naMask;
+    
+    /**
+     * Constructor
+     * @param naMask
+     *          the NA bitmap (bit i is set iff element i is NA). We keep
+     *          the reference so don't modify it after passing it in
+     */
+    protected RPrimitiveVector(BitSet naMask)
+    {
+        this.naMask = naMask;
+    }
+    
+    /**
+     * Get the number of elements in this vector
+     * @return
+     *          the size
+     */
+    public abstract int size();
+    
+    /**
+     * Determine if the given element is NA
+     * @param index
+     *          the zero based index
+     * @return
+     *          true iff the element is NA
+     */
+    public boolean isNA(int index)
+    {
+        return this.naMask.get(index);
+    }
+    
+    /**
+     * Determine if there are any NA's in this vector
+     * @return
+     *          true if any element is NA
+     */
+    public boolean containsNA()
+    {
+        return !this.naMask.isEmpty();
+    }
+    
+    /**
+     * Get the number of NA elements
+     * @return
+     *          the NA count
+     */
+    public int getNACount()
+    {
+        return this.naMask.cardinality();
+    }
+    
+    /**
+     * Get the NA mask for this vector. Bit i is set iff element i is NA.
+     * @return
+     *          the NA mask (returns a copy to protect our data)
+     */
+    public BitSet getNAMask()
+    {
+        return (BitSet)this.naMask.clone();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+/**
+ * A contiguous block of rows pulled from a matrix or data.frame by a
+ * {@link RRowBlockIterator}
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RRowBlock
+{
+    /**
+     * @see #getStartRowIndex()
+     */
+    private final int startRowIndex;
+    
+    /**
+     * @see #getContents()
+     */
+    private final RDataFrameSnapshot contents;
+    
+    /**
+     * Constructor
+     * @param startRowIndex
+     *          see {@link #getStartRowIndex()}
+     * @param contents
+     *          see {@link #getContents()}
+     */
+    public RRowBlock(int startRowIndex, RDataFrameSnapshot contents)
+    {
+        this.startRowIndex = startRowIndex;
+        this.contents = contents;
+    }
+    
+    /**
+     * Getter for the zero based index of the 1st row in this block
+     * (relative to the whole matrix or data.frame)
+     * @return the start row index
+     */
+    public int getStartRowIndex()
+    {
+        return this.startRowIndex;
+    }
+    
+    /**
+     * Getter for the number of rows in this block
+     * @return the row count
+     */
+    public int getRowCount()
+    {
+        return this.contents.getRowCount();
+    }
+    
+    /**
+     * Getter for the block contents. Matrix blocks are presented as
+     * data.frame snapshots with one column per matrix column.
+     * @return the contents
+     */
+    public RDataFrameSnapshot getContents()
+    {
+        return this.contents;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Future;
+
+import org.jax.r.RException;
+import org.jax.r.RUtilities;
+import org.rosuda.JRI.REXP;
+
+/**
+ * Iterates through a matrix or data.frame in fixed size blocks of rows so
+ * that we never need to hold the whole object on the java heap. Blocks are
+ * only fetched from R when they're asked for (or one block early if
+ * prefetching is turned on) and this iterator doesn't hold on to a block
+ * once it has been handed out, so the caller controls how long each block
+ * stays alive. The row slices are temporaries on the R side too so there is
+ * nothing to clean up in the R workspace.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RRowBlockIterator implements Iterator<RRowBlock>
+{
+    /**
+     * the object that we're iterating through
+     */
+    private final RObject rObject;
+    
+    /**
+     * the number of rows to pull over in each block
+     */
+    private final int rowsPerBlock;
+    
+    /**
+     * the total number of rows in the object
+     */
+    private final int totalRowCount;
+    
+    /**
+     * if true we request the next block from R before the caller asks
+     * for it
+     */
+    private final boolean prefetchNextBlock;
+    
+    /**
+     * the start index of the next block that we'll hand out
+     */
+    private int nextBlockStartRowIndex;
+    
+    /**
+     * the pending prefetch result for the next block (null if there is no
+     * prefetch in flight)
+     */
+    private Future<REXP> prefetchedNextBlock;
+    
+    /**
+     * Constructor
+     * @param rObject
+     *          the matrix or data.frame to iterate through
+     * @param rowsPerBlock
+     *          the number of rows in each block (the last block may be
+     *          smaller)
+     * @param prefetchNextBlock
+     *          if true we ask R for the next block as soon as the current
+     *          one is handed out so that R works while the caller processes
+     *          the current block
+     */
+    public RRowBlockIterator(
+            RObject rObject,
+            int rowsPerBlock,
+            boolean prefetchNextBlock)
+    {
+        if(rowsPerBlock <= 0)
+        {
+            throw new IllegalArgumentException(
+                    "the number of rows per block must be positive");
+        }
+        
+        this.rObject = rObject;
+        this.rowsPerBlock = rowsPerBlock;
+        this.prefetchNextBlock = prefetchNextBlock;
+        this.totalRowCount = JRIUtilityFunctions.getNumberOfRows(rObject);
+        this.nextBlockStartRowIndex = 0;
+        this.prefetchedNextBlock = null;
+        
+        if(prefetchNextBlock && this.hasNext())
+        {
+            this.requestNextBlock();
+        }
+    }
+    
+    /**
+     * Getter for the total number of rows that this iterator will
+     * walk through
+     * @return the row count
+     */
+    public int getTotalRowCount()
+    {
+        return this.totalRowCount;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasNext()
+    {
+        return this.nextBlockStartRowIndex < this.totalRowCount;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws RException
+     *          if R fails to give us the block
+     */
+    public RRowBlock next() throws RException
+    {
+        if(!this.hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        
+        if(this.prefetchedNextBlock == null)
+        {
+            this.requestNextBlock();
+        }
+        
+        REXP blockExpression;
+        try
+        {
+            blockExpression = this.prefetchedNextBlock.get();
+        }
+        catch(Exception ex)
+        {
+            // pass the buck on this exception
+            throw new RException(ex);
+        }
+        finally
+        {
+            this.prefetchedNextBlock = null;
+        }
+        
+        RDataFrameSnapshot blockSnapshot =
+            JRIUtilityFunctions.extractDataFrameSnapshot(blockExpression);
+        if(blockSnapshot == null)
+        {
+            // R failed to give us the rows (most likely an R error)
+            throw new RException(
+                    "failed to fetch rows " + this.nextBlockStartRowIndex +
+                    " to " + this.getNextBlockEndRowIndex() + " of " +
+                    this.rObject.getAccessorExpressionString());
+        }
+        
+        RRowBlock block = new RRowBlock(
+                this.nextBlockStartRowIndex,
+                blockSnapshot);
+        this.nextBlockStartRowIndex = this.getNextBlockEndRowIndex();
+        
+        if(this.prefetchNextBlock && this.hasNext())
+        {
+            this.requestNextBlock();
+        }
+        
+        return block;
+    }
+    
+    /**
+     * Not supported
+     * @throws UnsupportedOperationException
+     *          always
+     */
+    public void remove() throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(
+                "blocks cannot be removed from the underlying R object");
+    }
+    
+    /**
+     * Get the (exclusive) end of the next block
+     * @return
+     *          the end index
+     */
+    private int getNextBlockEndRowIndex()
+    {
+        return Math.min(
+                this.totalRowCount,
+                this.nextBlockStartRowIndex + this.rowsPerBlock);
+    }
+    
+    /**
+     * Ask R for the block starting at {@link #nextBlockStartRowIndex}
+     */
+    private void requestNextBlock()
+    {
+        String blockExpressionString =
+            "as.data.frame(" +
+            RUtilities.rowRangeIndexExpression(
+                    this.rObject.getAccessorExpressionString(),
+                    this.nextBlockStartRowIndex,
+                    this.getNextBlockEndRowIndex()) +
+            ", stringsAsFactors=FALSE)";
+        this.prefetchedNextBlock =
+            this.rObject.getRInterface().evaluateCommandAsynchronous(
+                    JRIUtilityFunctions.createDataFrameSnapshotCommand(
+                            blockExpressionString));
+    }
+}
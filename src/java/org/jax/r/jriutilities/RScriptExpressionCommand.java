@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import org.jax.r.RCommand;
+
+/**
+ * A command that evaluates one top level expression of a script run by
+ * {@link RScriptRunner}. The command text is the wrapper that R actually
+ * evaluates but listeners that show or record commands for the user should
+ * use the {@link #getExpressionText() expression text} instead, which is
+ * the expression as it was written in the script.
+ * {@link RParameterTransfer} uses the same split to record value transfers
+ * that don't go through command text.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RScriptExpressionCommand implements RCommand
+{
+    /**
+     * @see #getCommandText()
+     */
+    private final String commandText;
+    
+    /**
+     * @see #getExpressionText()
+     */
+    private final String expressionText;
+    
+    /**
+     * Constructor
+     * @param commandText
+     *          see {@link #getCommandText()}
+     * @param expressionText
+     *          see {@link #getExpressionText()}
+     */
+    public RScriptExpressionCommand(String commandText, String expressionText)
+    {
+        this.commandText = commandText;
+        this.expressionText = expressionText;
+    }
+    
+    /**
+     * Get the text that should be shown to the user for the given command.
+     * This is the script expression for {@link RScriptExpressionCommand}s
+     * and the command text for everything else
+     * @param command
+     *          the command
+     * @return
+     *          the text to show
+     */
+    public static String getDisplayText(RCommand command)
+    {
+        if(command instanceof RScriptExpressionCommand)
+        {
+            return ((RScriptExpressionCommand)command).getExpressionText();
+        }
+        else
+        {
+            return command.getCommandText();
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String getCommandText()
+    {
+        return this.commandText;
+    }
+    
+    /**
+     * Getter for the script expression's source text
+     * @return the expression text
+     */
+    public String getExpressionText()
+    {
+        return this.expressionText;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return this.expressionText;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.util.EventListener;
+
+/**
+ * Listens to the progress of a script run through
+ * {@link RScriptRunner#runScript(java.io.File, RScriptProgressListener)}
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public interface RScriptProgressListener extends EventListener
+{
+    /**
+     * Called once the script has been parsed and before any of it
+     * is evaluated
+     * @param expressionCount
+     *          the number of top level expressions in the script
+     */
+    public abstract void scriptStarted(int expressionCount);
+    
+    /**
+     * Called after each top level expression has been evaluated
+     * @param expressionIndex
+     *          the zero based index of the expression that finished
+     * @param expressionCount
+     *          the number of top level expressions in the script
+     * @param elapsedNanoseconds
+     *          the time the expression took
+     */
+    public abstract void expressionCompleted(
+            int expressionIndex,
+            int expressionCount,
+            long elapsedNanoseconds);
+    
+    /**
+     * Called if a top level expression fails. No more of the script is
+     * evaluated after a failure
+     * @param expressionIndex
+     *          the zero based index of the expression that failed
+     * @param expressionCount
+     *          the number of top level expressions in the script
+     * @param errorMessage
+     *          the error message from R
+     */
+    public abstract void expressionFailed(
+            int expressionIndex,
+            int expressionCount,
+            String errorMessage);
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jax.r.RAssignmentCommand;
+import org.jax.r.RCommand;
+import org.jax.r.RException;
+import org.jax.r.RUtilities;
+import org.rosuda.JRI.REXP;
+
+/**
+ * Runs R scripts through an {@link RInterface}. The script is parsed once
+ * on the R side and then each top level expression is evaluated with its
+ * own short command so that we can time it and report progress. R never
+ * has to parse the script text again no matter how long it is.
+ * Visible results are printed just like they would be by
+ * source(..., print.eval=TRUE).
+ * <p>
+ * Each expression is issued as an {@link RScriptExpressionCommand} through
+ * {@link RInterface#evaluateCommandNoReturn(RCommand)} so that it runs in
+ * R's console loop. That way its output is attributed to it and the
+ * terminal and the project history show the expression's own source text
+ * and output, the same as if it had been typed at the console. The
+ * outcome of each expression is left in a status variable that we read
+ * back with a follow up query, which also waits for the expression to
+ * finish since the queries are ordered behind it.
+ * </p>
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RScriptRunner
+{
+    /**
+     * our logger
+     */
+    private static final Logger LOG = Logger.getLogger(
+            RScriptRunner.class.getName());
+    
+    /**
+     * the prefix for the identifier that holds the parsed script
+     */
+    private static final String SCRIPT_IDENTIFIER_PREFIX = ".rjavaScript";
+    
+    /**
+     * the template for parsing the script. %s is the quoted file name
+     */
+    private static final String PARSE_EXPRESSION_TEMPLATE =
+        "parse(file=%s, keep.source=TRUE, encoding=\"UTF-8\")";
+    
+    /**
+     * the template (%s is the script identifier) for getting the source
+     * text of each parsed expression. we fall back on deparse(...) if R
+     * didn't keep the source references
+     */
+    private static final String EXPRESSION_TEXT_TEMPLATE =
+        "local({.x <- %1$s; .s <- attr(.x, \"srcref\"); " +
+        "as.character(if(is.null(.s)) " +
+        "sapply(.x, function(e) paste(deparse(e), collapse=\"\\n\")) " +
+        "else sapply(.s, function(s) paste(as.character(s), collapse=\"\\n\")))})";
+    
+    /**
+     * the prefix for the identifier that holds the status of the last
+     * expression
+     */
+    private static final String STATUS_IDENTIFIER_PREFIX = ".rjavaScriptStatus";
+    
+    /**
+     * the template for evaluating a single expression. 1st %s is the
+     * quoted status identifier, 2nd is the script identifier and 3rd is the
+     * one based expression index. The status is set to TRUE on success or
+     * the error message on failure
+     */
+    private static final String EVALUATE_EXPRESSION_TEMPLATE =
+        "assign(%s, local(tryCatch({" +
+        ".r <- withVisible(eval(%s[[%d]], globalenv())); " +
+        "if(.r$visible) print(.r$value); " +
+        "TRUE}, " +
+        "error=function(e) conditionMessage(e))), envir=globalenv())";
+    
+    /**
+     * the template (%s is the status identifier) for reading and then
+     * removing the status of the last expression
+     */
+    private static final String TAKE_STATUS_TEMPLATE =
+        "local({.s <- get(%1$s, envir=globalenv()); " +
+        "rm(list=%1$s, envir=globalenv()); .s})";
+    
+    private static final String TEMP_FILE_PREFIX = "rjava-script";
+    
+    private static final String TEMP_FILE_SUFFIX = ".R";
+    
+    private static final String FILE_ENCODING = "UTF-8";
+    
+    private final RInterface rInterface;
+    
+    /**
+     * Constructor
+     * @param rInterface
+     *          the R interface to run scripts in
+     */
+    public RScriptRunner(RInterface rInterface)
+    {
+        this.rInterface = rInterface;
+    }
+    
+    /**
+     * Like {@link #runScript(File, RScriptProgressListener)} except that
+     * the script text is given directly (it's written to a temp file once)
+     * @param scriptText
+     *          the script
+     * @param progressListener
+     *          the listener (can be null)
+     * @throws RException
+     *          if the script can't be written, parsed or evaluated
+     */
+    public void runScript(
+            String scriptText,
+            RScriptProgressListener progressListener)
+            throws RException
+    {
+        File scriptFile;
+        try
+        {
+            scriptFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+            Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(scriptFile),
+                    FILE_ENCODING);
+            try
+            {
+                writer.write(scriptText);
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch(IOException ex)
+        {
+            throw new RException("failed to write script file", ex);
+        }
+        
+        try
+        {
+            this.runScript(scriptFile, progressListener);
+        }
+        finally
+        {
+            if(!scriptFile.delete())
+            {
+                LOG.fine("failed to delete script file: " + scriptFile);
+                scriptFile.deleteOnExit();
+            }
+        }
+    }
+    
+    /**
+     * Run the given script file. The call returns once the whole script
+     * has run or an expression fails (in which case none of the
+     * following expressions are evaluated)
+     * @param scriptFile
+     *          the script
+     * @param progressListener
+     *          the listener (can be null)
+     * @throws RException
+     *          if the script can't be parsed or evaluated
+     */
+    public void runScript(
+            File scriptFile,
+            RScriptProgressListener progressListener)
+            throws RException
+    {
+        RIdentifierAllocator allocator =
+            RIdentifierAllocator.getAllocator(this.rInterface);
+        String scriptIdentifier = allocator.allocateIdentifier(
+                SCRIPT_IDENTIFIER_PREFIX);
+        String statusIdentifier = allocator.allocateIdentifier(
+                STATUS_IDENTIFIER_PREFIX);
+        String quotedStatusIdentifier = RUtilities.javaStringToRString(
+                statusIdentifier);
+        try
+        {
+            // parse the whole script once
+            this.rInterface.evaluateCommandNoReturn(new SilentRCommand(
+                    new RAssignmentCommand(
+                            scriptIdentifier,
+                            String.format(
+                                    PARSE_EXPRESSION_TEMPLATE,
+                                    RUtilities.javaStringToRString(
+                                            scriptFile.getAbsolutePath())))));
+            REXP expressionTextsExpression = this.rInterface.evaluateCommand(
+                    new SilentRQueryCommand(String.format(
+                            EXPRESSION_TEXT_TEMPLATE,
+                            scriptIdentifier)));
+            if(expressionTextsExpression == null)
+            {
+                throw new RException("failed to parse script: " + scriptFile);
+            }
+            String[] expressionTexts = expressionTextsExpression.asStringArray();
+            if(expressionTexts == null)
+            {
+                expressionTexts = new String[0];
+            }
+            int expressionCount = expressionTexts.length;
+            
+            if(progressListener != null)
+            {
+                progressListener.scriptStarted(expressionCount);
+            }
+            
+            // evaluate the expressions one at a time
+            for(int i = 0; i < expressionCount; i++)
+            {
+                long startTime = System.nanoTime();
+                this.rInterface.evaluateCommandNoReturn(
+                        new RScriptExpressionCommand(
+                                String.format(
+                                        EVALUATE_EXPRESSION_TEMPLATE,
+                                        quotedStatusIdentifier,
+                                        scriptIdentifier,
+                                        i + 1),
+                                expressionTexts[i]));
+                REXP result = this.rInterface.evaluateCommand(
+                        new SilentRCommand(String.format(
+                                TAKE_STATUS_TEMPLATE,
+                                quotedStatusIdentifier)));
+                long elapsedTime = System.nanoTime() - startTime;
+                
+                String errorMessage = RScriptRunner.extractErrorMessage(result);
+                if(errorMessage == null)
+                {
+                    if(progressListener != null)
+                    {
+                        progressListener.expressionCompleted(
+                                i,
+                                expressionCount,
+                                elapsedTime);
+                    }
+                }
+                else
+                {
+                    if(progressListener != null)
+                    {
+                        progressListener.expressionFailed(
+                                i,
+                                expressionCount,
+                                errorMessage);
+                    }
+                    throw new RException(
+                            "script expression " + (i + 1) + " of " +
+                            expressionCount + " failed: " + errorMessage);
+                }
+            }
+        }
+        finally
+        {
+            try
+            {
+                this.rInterface.evaluateCommandNoReturn(new SilentRCommand(
+                        "suppressWarnings(rm(list=c(" +
+                        RUtilities.javaStringToRString(scriptIdentifier) +
+                        ", " + quotedStatusIdentifier +
+                        "), envir=globalenv()))"));
+            }
+            catch(RException ex)
+            {
+                LOG.log(Level.WARNING,
+                        "failed to remove parsed script",
+                        ex);
+            }
+            allocator.releaseIdentifier(scriptIdentifier);
+            allocator.releaseIdentifier(statusIdentifier);
+        }
+    }
+    
+    /**
+     * Get the error message from an expression result
+     * @param result
+     *          the result
+     * @return
+     *          the error message or null if the expression succeeded
+     */
+    private static String extractErrorMessage(REXP result)
+    {
+        if(result == null)
+        {
+            return "evaluation failed";
+        }
+        else if(result.getType() == REXP.XT_STR)
+        {
+            return result.asString();
+        }
+        else
+        {
+            return null;
+        }
+    }
+}
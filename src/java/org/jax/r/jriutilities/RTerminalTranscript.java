@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append only on-disk transcript of terminal text. This is where
+ * {@link DocumentWritingRInterfaceListener} puts text that it trims off of
+ * the top of the terminal document so that long sessions don't have to
+ * keep their whole transcript in memory but it can still be searched and
+ * exported.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RTerminalTranscript
+{
+    /**
+     * the prefix we use for temp transcript files
+     */
+    private static final String TEMP_FILE_PREFIX = "rjava-transcript";
+    
+    /**
+     * the suffix we use for temp transcript files
+     */
+    private static final String TEMP_FILE_SUFFIX = ".txt";
+    
+    /**
+     * the char encoding of the transcript file
+     */
+    private static final String ENCODING = "UTF-8";
+    
+    /**
+     * the number of chars we copy at a time when exporting
+     */
+    private static final int COPY_BUFFER_SIZE = 8192;
+    
+    /**
+     * @see #getFile()
+     */
+    private final File file;
+    
+    /**
+     * true if {@link #file} is a temp file that we delete on close
+     */
+    private final boolean deleteOnClose;
+    
+    /**
+     * the writer for appending to {@link #file}
+     */
+    private final Writer writer;
+    
+    /**
+     * @see #getLength()
+     */
+    private long length = 0L;
+    
+    /**
+     * Constructor for a transcript in a temp file that's deleted when the
+     * transcript is closed
+     * @throws IOException
+     *          if the file can't be created
+     */
+    public RTerminalTranscript() throws IOException
+    {
+        this(RTerminalTranscript.createTempFile(), true);
+    }
+    
+    /**
+     * Constructor
+     * @param file
+     *          the file to write the transcript to. any existing contents
+     *          are replaced
+     * @throws IOException
+     *          if the file can't be opened
+     */
+    public RTerminalTranscript(File file) throws IOException
+    {
+        this(file, false);
+    }
+    
+    /**
+     * Constructor
+     * @param file
+     *          the file to write the transcript to
+     * @param deleteOnClose
+     *          if true the file is deleted when the transcript is closed
+     * @throws IOException
+     *          if the file can't be opened
+     */
+    private RTerminalTranscript(File file, boolean deleteOnClose)
+            throws IOException
+    {
+        this.file = file;
+        this.deleteOnClose = deleteOnClose;
+        this.writer = new OutputStreamWriter(
+                new FileOutputStream(file),
+                ENCODING);
+    }
+    
+    /**
+     * Create the temp file
+     * @return
+     *          the file
+     * @throws IOException
+     *          if the file can't be created
+     */
+    private static File createTempFile() throws IOException
+    {
+        File tempFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        tempFile.deleteOnExit();
+        return tempFile;
+    }
+    
+    /**
+     * Getter for the transcript file
+     * @return the file
+     */
+    public File getFile()
+    {
+        return this.file;
+    }
+    
+    /**
+     * Get the number of chars in the transcript
+     * @return
+     *          the length
+     */
+    public synchronized long getLength()
+    {
+        return this.length;
+    }
+    
+    /**
+     * Append to the end of the transcript
+     * @param text
+     *          the text to append
+     * @throws IOException
+     *          if the write fails
+     */
+    public synchronized void append(String text) throws IOException
+    {
+        this.writer.write(text);
+        this.writer.flush();
+        this.length += text.length();
+    }
+    
+    /**
+     * Write the whole transcript to the given writer
+     * @param destination
+     *          the writer to copy to
+     * @throws IOException
+     *          if the read or write fails
+     */
+    public synchronized void exportTo(Writer destination) throws IOException
+    {
+        Reader reader = this.openReader();
+        try
+        {
+            char[] buffer = new char[COPY_BUFFER_SIZE];
+            int charCount;
+            while((charCount = reader.read(buffer)) != -1)
+            {
+                destination.write(buffer, 0, charCount);
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+    
+    /**
+     * Find all of the lines in the transcript that contain the given text
+     * @param searchText
+     *          the text to look for
+     * @return
+     *          the matching lines in transcript order
+     * @throws IOException
+     *          if the read fails
+     */
+    public synchronized List<String> findLines(String searchText)
+            throws IOException
+    {
+        List<String> matchingLines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(this.openReader());
+        try
+        {
+            String currLine;
+            while((currLine = reader.readLine()) != null)
+            {
+                if(currLine.indexOf(searchText) != -1)
+                {
+                    matchingLines.add(currLine);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        
+        return matchingLines;
+    }
+    
+    /**
+     * Close the transcript. Nothing more can be appended after this. A temp
+     * file transcript is deleted
+     * @throws IOException
+     *          if the close fails
+     */
+    public synchronized void close() throws IOException
+    {
+        this.writer.close();
+        
+        if(this.deleteOnClose && !this.file.delete())
+        {
+            throw new IOException(
+                    "failed to delete the transcript file: " +
+                    this.file.getAbsolutePath());
+        }
+    }
+    
+    /**
+     * Open a reader for the transcript file
+     * @return
+     *          the reader
+     * @throws IOException
+     *          if the file can't be opened
+     */
+    private Reader openReader() throws IOException
+    {
+        return new InputStreamReader(new FileInputStream(this.file), ENCODING);
+    }
+}
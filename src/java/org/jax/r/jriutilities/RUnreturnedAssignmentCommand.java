@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import org.jax.r.RAssignmentCommand;
+
+/**
+ * An assignment that evaluates to TRUE instead of the assigned value. In R
+ * an assignment evaluates to the value that was assigned, so a plain
+ * assignment of a large vector has JRI copy the whole vector back to java
+ * just to be thrown away. The result of this command is only useful for
+ * telling success (TRUE) apart from failure (null).
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+class RUnreturnedAssignmentCommand extends RAssignmentCommand
+{
+    /**
+     * Constructor
+     * @param assigneeIdentifier
+     *          the R identifier for the assignee
+     * @param assignmentValueExpression
+     *          the R expression whose value we're assigning to the
+     *          assignee
+     */
+    public RUnreturnedAssignmentCommand(
+            String assigneeIdentifier,
+            String assignmentValueExpression)
+    {
+        super(assigneeIdentifier, assignmentValueExpression);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getCommandText()
+    {
+        return "{" + super.getCommandText() + "; TRUE}";
+    }
+}
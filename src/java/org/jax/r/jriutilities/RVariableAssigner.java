@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import org.jax.r.RException;
+import org.jax.r.RVectorLiteralBuilder;
+import org.rosuda.JRI.REXP;
+
+/**
+ * Assigns java arrays to R variables through an {@link RInterface}. When
+ * the interface is a {@link BasicRInterface} the values are transferred
+ * directly into R without going through command text (see
+ * {@link BasicRInterface#assignDoubles(String, double[])}). Any other
+ * interface gets an assignment from a vector literal instead, so this
+ * works the same way for every {@link RInterface} implementation.
+ * Either way the assignment is treated like a silent command and will not
+ * show up in any command history.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RVariableAssigner
+{
+    /**
+     * the interface that we assign through
+     */
+    private final RInterface rInterface;
+    
+    /**
+     * Constructor
+     * @param rInterface
+     *          the R interface to assign variables in
+     */
+    public RVariableAssigner(RInterface rInterface)
+    {
+        this.rInterface = rInterface;
+    }
+    
+    /**
+     * Assign the given values to an R numeric vector
+     * @param variableName
+     *          the name of the variable to assign to
+     * @param values
+     *          the values to assign. Use {@link RDoubleVector#NA} for NA's
+     * @throws RException
+     *          if anything goes wrong
+     */
+    public void assignDoubles(String variableName, double[] values)
+            throws RException
+    {
+        if(this.rInterface instanceof BasicRInterface)
+        {
+            ((BasicRInterface)this.rInterface).assignDoubles(
+                    variableName,
+                    values);
+        }
+        else
+        {
+            this.assignLiteral(
+                    variableName,
+                    new RVectorLiteralBuilder().appendDoubleVector(values));
+        }
+    }
+    
+    /**
+     * Assign the given values to an R integer vector
+     * @param variableName
+     *          the name of the variable to assign to
+     * @param values
+     *          the values to assign. Use {@link RIntVector#NA} for NA's
+     * @throws RException
+     *          if anything goes wrong
+     */
+    public void assignInts(String variableName, int[] values)
+            throws RException
+    {
+        if(this.rInterface instanceof BasicRInterface)
+        {
+            ((BasicRInterface)this.rInterface).assignInts(
+                    variableName,
+                    values);
+        }
+        else
+        {
+            this.assignLiteral(
+                    variableName,
+                    new RVectorLiteralBuilder().appendIntVector(values));
+        }
+    }
+    
+    /**
+     * Assign the given values to an R logical vector
+     * @param variableName
+     *          the name of the variable to assign to
+     * @param values
+     *          the values to assign
+     * @throws RException
+     *          if anything goes wrong
+     */
+    public void assignLogicals(String variableName, boolean[] values)
+            throws RException
+    {
+        if(this.rInterface instanceof BasicRInterface)
+        {
+            ((BasicRInterface)this.rInterface).assignLogicals(
+                    variableName,
+                    values);
+        }
+        else
+        {
+            this.assignLiteral(
+                    variableName,
+                    new RVectorLiteralBuilder().appendBooleanVector(values));
+        }
+    }
+    
+    /**
+     * Assign the given values to an R character vector
+     * @param variableName
+     *          the name of the variable to assign to
+     * @param values
+     *          the values to assign. Use null for NA's
+     * @throws RException
+     *          if anything goes wrong
+     */
+    public void assignStrings(String variableName, String[] values)
+            throws RException
+    {
+        if(this.rInterface instanceof BasicRInterface)
+        {
+            ((BasicRInterface)this.rInterface).assignStrings(
+                    variableName,
+                    values);
+        }
+        else
+        {
+            this.assignLiteral(
+                    variableName,
+                    new RVectorLiteralBuilder().appendStringVector(values));
+        }
+    }
+    
+    /**
+     * Assign a vector literal to the given variable
+     * @param variableName
+     *          the variable to assign to
+     * @param literalBuilder
+     *          the builder holding the literal
+     * @throws RException
+     *          if R fails to do the assignment
+     */
+    private void assignLiteral(
+            String variableName,
+            RVectorLiteralBuilder literalBuilder)
+            throws RException
+    {
+        REXP result = this.rInterface.evaluateCommand(new SilentRCommand(
+                new RUnreturnedAssignmentCommand(
+                        variableName,
+                        literalBuilder.toString())));
+        if(result == null)
+        {
+            throw new RException(
+                    "failed to assign values to R variable: " + variableName);
+        }
+    }
+}
@@ -0,0 +1,654 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jax.r.RAssignmentCommand;
+import org.jax.r.RAssignmentNode;
+import org.jax.r.RCommand;
+import org.jax.r.RException;
+import org.jax.r.RExpressionCommand;
+import org.jax.r.RExpressionNode;
+import org.rosuda.JRI.REXP;
+
+/**
+ * Keeps a snapshot of the metadata for all top level objects in the R
+ * workspace so that views over many objects don't need to go back to R for
+ * every attribute that they read. The catalog listens to the R interface
+ * and works out which objects may have changed after each command:
+ * assignments (including binary assignments) only invalidate the assigned
+ * object, {@link SilentRQueryCommand}s are read only, and any other command
+ * (silent or not) invalidates everything.
+ * Nothing is fetched until someone asks for metadata, at which point
+ * only invalidated and newly created objects are queried.
+ * <p>
+ * Don't call into the catalog from an {@link RInterfaceListener} callback
+ * since refreshing needs to wait for R.
+ * </p>
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RWorkspaceCatalog
+{
+    /**
+     * the catalogs that have been created so far (one per R interface).
+     * both the keys and the values are weak so that we don't keep R
+     * interfaces alive. the R interface holds on to its catalog through
+     * {@link #workspaceChangeListener} so the catalog lives exactly as
+     * long as its interface
+     */
+    private static final Map<RInterface, WeakReference<RWorkspaceCatalog>> CATALOGS =
+        new WeakHashMap<RInterface, WeakReference<RWorkspaceCatalog>>();
+    
+    /**
+     * the R interface whose workspace we're cataloging
+     */
+    private final RInterface rInterface;
+    
+    /**
+     * the identifiers of objects that need to be refreshed. we only use
+     * the keys (this is a concurrent set)
+     */
+    private final ConcurrentHashMap<String, Boolean> staleIdentifiers;
+    
+    /**
+     * true if we need to refresh the whole catalog
+     */
+    private final AtomicBoolean fullRefreshNeeded;
+    
+    /**
+     * the current snapshot in "ls()" order
+     */
+    private volatile Map<String, RObjectMetadata> snapshot;
+    
+    /**
+     * the ownership index over the top level identifiers. this is kept
+     * separately from the {@link #snapshot} so that it can be rebuilt from
+     * a plain listing without fetching any metadata
+     */
+    private volatile RIdentifierIndex identifierIndex;
+    
+    /**
+     * true if the {@link #identifierIndex} may be missing created objects
+     * or holding removed ones
+     */
+    private final AtomicBoolean identifierIndexRefreshNeeded;
+    
+    /**
+     * @see #getSharedIdentifierAllocator()
+     */
+    private final AtomicReference<RIdentifierAllocator> sharedIdentifierAllocator =
+        new AtomicReference<RIdentifierAllocator>();
+    
+    /**
+     * invalidates catalog entries as commands are processed
+     */
+    private final RInterfaceListener workspaceChangeListener = new RInterfaceListener()
+    {
+        /**
+         * {@inheritDoc}
+         */
+        public void completedCommandProcessing(
+                RInterface eventSource,
+                RCommand command,
+                REXP result)
+        {
+            RWorkspaceCatalog.this.commandCompleted(command);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void initiatedCommandProcessing(
+                RInterface eventSource,
+                RCommand command)
+        {
+            // don't care
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void pendingCommandCountChanged(int updatedCommandCount)
+        {
+            // don't care
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void receivedComment(String comment)
+        {
+            // don't care
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void receivedMessageFromR(
+                RInterface eventSource,
+                String message,
+                RCommand activeCommand)
+        {
+            // don't care
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void receivedOutputFromR(
+                RInterface eventSource,
+                String output,
+                RCommand activeCommand)
+        {
+            // don't care
+        }
+    };
+    
+    /**
+     * Constructor. Use {@link #getCatalog(RInterface)} to share a single
+     * catalog per R interface.
+     * @param rInterface
+     *          the R interface whose workspace we're cataloging
+     */
+    public RWorkspaceCatalog(RInterface rInterface)
+    {
+        this.rInterface = rInterface;
+        this.staleIdentifiers = new ConcurrentHashMap<String, Boolean>();
+        this.fullRefreshNeeded = new AtomicBoolean(true);
+        this.identifierIndexRefreshNeeded = new AtomicBoolean(true);
+        this.snapshot = Collections.emptyMap();
+        this.identifierIndex = new RIdentifierIndex(this.snapshot.keySet());
+        rInterface.addRInterfaceListener(this.workspaceChangeListener);
+    }
+    
+    /**
+     * Get the shared catalog for the given R interface (creating it if
+     * needed)
+     * @param rInterface
+     *          the R interface
+     * @return
+     *          the catalog
+     */
+    public static RWorkspaceCatalog getCatalog(RInterface rInterface)
+    {
+        synchronized(CATALOGS)
+        {
+            WeakReference<RWorkspaceCatalog> catalogReference =
+                CATALOGS.get(rInterface);
+            RWorkspaceCatalog catalog =
+                catalogReference == null ? null : catalogReference.get();
+            if(catalog == null)
+            {
+                catalog = new RWorkspaceCatalog(rInterface);
+                CATALOGS.put(
+                        rInterface,
+                        new WeakReference<RWorkspaceCatalog>(catalog));
+            }
+            
+            return catalog;
+        }
+    }
+    
+    /**
+     * Get the allocator that {@link RIdentifierAllocator#getAllocator(RInterface)}
+     * shares for this catalog's R interface (creating it if needed). It's
+     * kept here so that it lives exactly as long as the catalog does
+     * @return
+     *          the allocator
+     */
+    RIdentifierAllocator getSharedIdentifierAllocator()
+    {
+        RIdentifierAllocator allocator = this.sharedIdentifierAllocator.get();
+        if(allocator == null)
+        {
+            this.sharedIdentifierAllocator.compareAndSet(
+                    null,
+                    new RIdentifierAllocator(this));
+            allocator = this.sharedIdentifierAllocator.get();
+        }
+        
+        return allocator;
+    }
+    
+    /**
+     * Getter for the R interface that this catalog is for
+     * @return the R interface
+     */
+    public RInterface getRInterface()
+    {
+        return this.rInterface;
+    }
+    
+    /**
+     * Mark the given top level object as changed. You only need to call
+     * this if you change the workspace in a way that the catalog can't
+     * see (eg. through a {@link SilentRQueryCommand} or from outside of
+     * the R interface)
+     * @param identifier
+     *          the top level identifier
+     */
+    public void invalidate(String identifier)
+    {
+        this.staleIdentifiers.put(identifier, Boolean.TRUE);
+        this.identifierIndexRefreshNeeded.set(true);
+    }
+    
+    /**
+     * Mark the whole catalog as changed
+     */
+    public void invalidateAll()
+    {
+        this.fullRefreshNeeded.set(true);
+        this.identifierIndexRefreshNeeded.set(true);
+    }
+    
+    /**
+     * Get the metadata for the given top level object
+     * @param identifier
+     *          the identifier
+     * @return
+     *          the metadata or null if there is no top level object with
+     *          the given identifier
+     * @throws RException
+     *          if we need to refresh and that fails
+     */
+    public RObjectMetadata getMetadata(String identifier) throws RException
+    {
+        return this.getSnapshot().get(identifier);
+    }
+    
+    /**
+     * Get metadata for all top level objects
+     * @return
+     *          the metadata in "ls()" order
+     * @throws RException
+     *          if we need to refresh and that fails
+     */
+    public List<RObjectMetadata> getAllMetadata() throws RException
+    {
+        return new ArrayList<RObjectMetadata>(this.getSnapshot().values());
+    }
+    
+    /**
+     * Get metadata for all top level objects whose class vector contains
+     * the given class
+     * @param rClassName
+     *          the class
+     * @return
+     *          the metadata in "ls()" order
+     * @throws RException
+     *          if we need to refresh and that fails
+     */
+    public List<RObjectMetadata> getMetadataOfType(String rClassName)
+            throws RException
+    {
+        List<RObjectMetadata> matches = new ArrayList<RObjectMetadata>();
+        for(RObjectMetadata currMetadata: this.getSnapshot().values())
+        {
+            if(currMetadata.inheritsRClass(rClassName))
+            {
+                matches.add(currMetadata);
+            }
+        }
+        
+        return matches;
+    }
+    
+    /**
+     * Get an up to date ownership index over the top level identifiers.
+     * Unlike the metadata getters this only needs a listing of the
+     * workspace ("ls()") so it stays cheap after a command invalidates
+     * everything
+     * @return
+     *          the index
+     * @throws RException
+     *          if we need to refresh and that fails
+     */
+    public RIdentifierIndex getIdentifierIndex() throws RException
+    {
+        if(this.identifierIndexRefreshNeeded.get())
+        {
+            synchronized(this)
+            {
+                if(this.identifierIndexRefreshNeeded.getAndSet(false))
+                {
+                    try
+                    {
+                        this.identifierIndex = new RIdentifierIndex(Arrays.asList(
+                                JRIUtilityFunctions.getTopLevelObjectNames(
+                                        this.rInterface)));
+                    }
+                    catch(RuntimeException ex)
+                    {
+                        // the index is still stale
+                        this.identifierIndexRefreshNeeded.set(true);
+                        throw ex;
+                    }
+                }
+            }
+        }
+        
+        return this.identifierIndex;
+    }
+    
+    /**
+     * Get an up to date snapshot, refreshing it first if anything has been
+     * invalidated
+     * @return
+     *          the snapshot
+     * @throws RException
+     *          if the refresh fails
+     */
+    private Map<String, RObjectMetadata> getSnapshot() throws RException
+    {
+        if(this.fullRefreshNeeded.get() || !this.staleIdentifiers.isEmpty())
+        {
+            this.refresh();
+        }
+        
+        return this.snapshot;
+    }
+    
+    /**
+     * Bring the snapshot up to date. This will only go to R for objects that
+     * have been invalidated unless a full refresh is needed
+     * @throws RException
+     *          if the refresh fails
+     */
+    public synchronized void refresh() throws RException
+    {
+        // the refresh lists the whole workspace anyway so the index that
+        // comes out of it is up to date unless something is invalidated
+        // while we're working. we clear the flags before going to R so that
+        // we don't lose invalidations that happen during the refresh and
+        // put them back if the refresh fails
+        this.identifierIndexRefreshNeeded.set(false);
+        if(this.fullRefreshNeeded.getAndSet(false))
+        {
+            try
+            {
+                this.refreshAll();
+            }
+            catch(RuntimeException ex)
+            {
+                this.fullRefreshNeeded.set(true);
+                this.identifierIndexRefreshNeeded.set(true);
+                throw ex;
+            }
+        }
+        else if(!this.staleIdentifiers.isEmpty())
+        {
+            List<String> staleIdentifiersToFetch = new ArrayList<String>();
+            Iterator<String> staleIter = this.staleIdentifiers.keySet().iterator();
+            while(staleIter.hasNext())
+            {
+                staleIdentifiersToFetch.add(staleIter.next());
+                staleIter.remove();
+            }
+            
+            try
+            {
+                this.refreshStale(staleIdentifiersToFetch);
+            }
+            catch(RuntimeException ex)
+            {
+                for(String staleIdentifier: staleIdentifiersToFetch)
+                {
+                    this.staleIdentifiers.put(staleIdentifier, Boolean.TRUE);
+                }
+                this.identifierIndexRefreshNeeded.set(true);
+                throw ex;
+            }
+        }
+    }
+    
+    /**
+     * Rebuild the whole snapshot. The caller must hold this catalog's lock
+     * @throws RException
+     *          if the refresh fails
+     */
+    private void refreshAll() throws RException
+    {
+        this.staleIdentifiers.clear();
+        Map<String, RObjectMetadata> newSnapshot =
+            new LinkedHashMap<String, RObjectMetadata>();
+        for(RObjectMetadata currMetadata:
+            JRIUtilityFunctions.getTopLevelObjectMetadata(this.rInterface, null))
+        {
+            newSnapshot.put(currMetadata.getName(), currMetadata);
+        }
+        this.setSnapshot(newSnapshot);
+    }
+    
+    /**
+     * Refetch the given stale objects along with any objects that are new
+     * since the last refresh. The caller must hold this catalog's lock
+     * @param identifiersToFetch
+     *          the identifiers of the stale objects. anything invalidated
+     *          after these were taken out of {@link #staleIdentifiers} will
+     *          be picked up by the next refresh
+     * @throws RException
+     *          if the refresh fails
+     */
+    private void refreshStale(List<String> identifiersToFetch)
+            throws RException
+    {
+        // we still need the full listing to pick up new and removed
+        // objects but that's cheap compared to the metadata
+        identifiersToFetch = new ArrayList<String>(identifiersToFetch);
+        Map<String, RObjectMetadata> oldSnapshot = this.snapshot;
+        String[] allIdentifiers = JRIUtilityFunctions.getTopLevelObjectNames(
+                this.rInterface);
+        for(String currIdentifier: allIdentifiers)
+        {
+            if(!oldSnapshot.containsKey(currIdentifier))
+            {
+                identifiersToFetch.add(currIdentifier);
+            }
+        }
+        
+        Map<String, RObjectMetadata> fetchedMetadata =
+            new HashMap<String, RObjectMetadata>();
+        if(!identifiersToFetch.isEmpty())
+        {
+            for(RObjectMetadata currMetadata:
+                JRIUtilityFunctions.getMetadataForTopLevelObjects(
+                        this.rInterface,
+                        identifiersToFetch.toArray(
+                                new String[identifiersToFetch.size()])))
+            {
+                fetchedMetadata.put(currMetadata.getName(), currMetadata);
+            }
+        }
+        
+        Map<String, RObjectMetadata> newSnapshot =
+            new LinkedHashMap<String, RObjectMetadata>();
+        for(String currIdentifier: allIdentifiers)
+        {
+            RObjectMetadata currMetadata = fetchedMetadata.get(currIdentifier);
+            if(currMetadata == null)
+            {
+                currMetadata = oldSnapshot.get(currIdentifier);
+            }
+            
+            if(currMetadata != null)
+            {
+                newSnapshot.put(currIdentifier, currMetadata);
+            }
+        }
+        this.setSnapshot(newSnapshot);
+    }
+    
+    /**
+     * Replace the current snapshot and rebuild the index to match
+     * @param newSnapshot
+     *          the new snapshot
+     */
+    private void setSnapshot(Map<String, RObjectMetadata> newSnapshot)
+    {
+        // build the index 1st so that anyone who sees the new snapshot
+        // also sees the matching index
+        this.identifierIndex = new RIdentifierIndex(newSnapshot.keySet());
+        this.snapshot = Collections.unmodifiableMap(newSnapshot);
+    }
+    
+    /**
+     * Invalidate whatever the given command may have changed
+     * @param command
+     *          the command that R just finished
+     */
+    private void commandCompleted(RCommand command)
+    {
+        if(command instanceof SilentRQueryCommand)
+        {
+            // queries don't change anything
+        }
+        else if(command != null)
+        {
+            RCommand unwrappedCommand = command instanceof SilentRCommand ?
+                    ((SilentRCommand)command).getEncapsulatedCommand() :
+                    command;
+            String assigneeExpression =
+                RWorkspaceCatalog.getAssigneeExpression(unwrappedCommand);
+            if(assigneeExpression != null)
+            {
+                this.assignmentCompleted(assigneeExpression);
+            }
+            else
+            {
+                this.invalidateAll();
+            }
+        }
+    }
+    
+    /**
+     * Get the left hand side of the given command if it's an assignment
+     * @param command
+     *          the command
+     * @return
+     *          the assignee expression or null if the command isn't an
+     *          assignment that we recognize
+     */
+    private static String getAssigneeExpression(RCommand command)
+    {
+        if(command instanceof RAssignmentCommand)
+        {
+            return ((RAssignmentCommand)command).getAssigneeIdentifier();
+        }
+        else if(command instanceof RExpressionCommand)
+        {
+            RExpressionNode expression =
+                ((RExpressionCommand)command).getExpression();
+            if(expression instanceof RAssignmentNode)
+            {
+                return ((RAssignmentNode)expression).getAssignee().render();
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Invalidate the object that an assignment changed
+     * @param assigneeExpression
+     *          the left hand side of the assignment
+     */
+    private void assignmentCompleted(String assigneeExpression)
+    {
+        String rootIdentifier = RWorkspaceCatalog.extractRootIdentifier(
+                assigneeExpression);
+        if(rootIdentifier == null)
+        {
+            this.invalidateAll();
+        }
+        else
+        {
+            this.invalidate(rootIdentifier);
+        }
+    }
+    
+    /**
+     * Get the top level identifier that the given assignee expression
+     * modifies. For example "x" for "x$y[1]"
+     * @param assigneeExpression
+     *          the left hand side of an assignment
+     * @return
+     *          the identifier or null if we can't tell (for example with
+     *          replacement functions like "names(x)")
+     */
+    static String extractRootIdentifier(String assigneeExpression)
+    {
+        String trimmedExpression = assigneeExpression.trim();
+        int length = trimmedExpression.length();
+        if(length == 0)
+        {
+            return null;
+        }
+        else if(trimmedExpression.charAt(0) == '`')
+        {
+            int closingIndex = trimmedExpression.indexOf('`', 1);
+            return closingIndex == -1 ?
+                   null :
+                   trimmedExpression.substring(1, closingIndex);
+        }
+        else
+        {
+            int endIndex = 0;
+            while(endIndex < length)
+            {
+                char currChar = trimmedExpression.charAt(endIndex);
+                if(Character.isLetterOrDigit(currChar) ||
+                   currChar == '.' ||
+                   currChar == '_')
+                {
+                    endIndex++;
+                }
+                else
+                {
+                    break;
+                }
+            }
+            
+            if(endIndex == 0 ||
+               (endIndex < length && trimmedExpression.charAt(endIndex) == '('))
+            {
+                return null;
+            }
+            else
+            {
+                return trimmedExpression.substring(0, endIndex);
+            }
+        }
+    }
+}
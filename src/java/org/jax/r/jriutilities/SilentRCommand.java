@@ -56,6 +56,15 @@ public class SilentRCommand implements RCommand
         this.encapsulatedCommand = encapsulatedCommand;
     }
 
+    /**
+     * Getter for the command that this silent command is encapsulating
+     * @return the encapsulated command
+     */
+    public RCommand getEncapsulatedCommand()
+    {
+        return this.encapsulatedCommand;
+    }
+
     /**
      * {@inheritDoc}
      */
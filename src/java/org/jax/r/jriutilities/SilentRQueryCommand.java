@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.jriutilities;
+
+import org.jax.r.RCommand;
+
+/**
+ * A {@link SilentRCommand} that only reads from the R workspace. Listeners
+ * such as the {@link RWorkspaceCatalog} can skip these when working out what
+ * a command may have changed, so use a plain {@link SilentRCommand} for
+ * anything that creates, modifies or removes objects.
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class SilentRQueryCommand extends SilentRCommand
+{
+    /**
+     * Constructor
+     * @param commandText
+     *          the command text
+     */
+    public SilentRQueryCommand(String commandText)
+    {
+        super(commandText);
+    }
+    
+    /**
+     * Constructor
+     * @param encapsulatedCommand 
+     *          the command that this silent query is encapsulating
+     */
+    public SilentRQueryCommand(RCommand encapsulatedCommand)
+    {
+        super(encapsulatedCommand);
+    }
+}
@@ -30,6 +30,7 @@ import javax.swing.SwingUtilities;
 
 import org.jax.util.TextWrapper;
 import org.jax.util.concurrent.SimpleLongRunningTask;
+import org.jax.util.project.Project;
 import org.jax.util.project.ProjectManager;
 
 /**
@@ -80,7 +81,23 @@ implements Runnable
     {
         try
         {
-            if(!this.projectManager.loadActiveProject(this.file))
+            Project oldProject = this.projectManager.getActiveProject();
+            if(this.projectManager.loadActiveProject(this.file))
+            {
+                Project newProject = this.projectManager.getActiveProject();
+                if(oldProject instanceof RProject && oldProject != newProject)
+                {
+                    // the old project is closed cleanly so its journal
+                    // isn't needed for recovery any more
+                    ((RProject)oldProject).discardHistoryJournal();
+                }
+                
+                if(newProject instanceof RProject)
+                {
+                    ((RProject)newProject).openHistoryJournal(this.file);
+                }
+            }
+            else
             {
                 SwingUtilities.invokeLater(new Runnable()
                 {
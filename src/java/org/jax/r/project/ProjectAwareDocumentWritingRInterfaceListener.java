@@ -22,10 +22,12 @@ package org.jax.r.project;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.swing.SwingUtilities;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.StyledDocument;
 
@@ -37,7 +39,9 @@ import org.jax.util.project.ProjectManager;
 /**
  * This is a {@link DocumentWritingRInterfaceListener} that listens for new
  * projects being loaded so that it can restore the new project's console
- * output.
+ * output. Only the latest page of history is rendered when a project
+ * becomes active. Older pages are rendered on request (see
+ * {@link #loadOlderHistoryPage()}) so huge histories don't freeze the UI.
  * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
  */
 public class ProjectAwareDocumentWritingRInterfaceListener
@@ -50,6 +54,36 @@ extends
     private static final Logger LOG = Logger.getLogger(
             ProjectAwareDocumentWritingRInterfaceListener.class.getName());
     
+    /**
+     * the most chars of history that we render at a time. a page always
+     * gets at least one item even if that item is bigger than this
+     */
+    private static final int HISTORY_PAGE_CHAR_LIMIT = 100000;
+    
+    /**
+     * the prompt that goes before commands and comments
+     */
+    private static final String PROMPT = "> ";
+    
+    /**
+     * the history that we replayed for the active project. only touched
+     * from the AWT thread
+     */
+    private List<RHistoryItemType> replayedHistory =
+        Collections.<RHistoryItemType>emptyList();
+    
+    /**
+     * the index of the oldest item in {@link #replayedHistory} that's been
+     * rendered into the document. only touched from the AWT thread
+     */
+    private int firstReplayedIndex = 0;
+    
+    /**
+     * the number of chars at the top of the document that were rendered
+     * from {@link #replayedHistory}. only touched from the AWT thread
+     */
+    private int replayedTextLength = 0;
+    
     /**
      * The listener that pays attention to the active project
      */
@@ -97,62 +131,338 @@ extends
      */
     private void activeProjectChanged(RProject newActiveProject)
     {
-        // 1st clear out the document contents
+        // the snapshot is immutable and cheap to take so we can grab it on
+        // whatever thread we're called from and leave the document work
+        // to the AWT thread
+        final List<RHistoryItemType> commandHistory =
+            newActiveProject.getRHistory();
+        Runnable replayHistory = new Runnable()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            public void run()
+            {
+                ProjectAwareDocumentWritingRInterfaceListener.this.replayHistory(
+                        commandHistory);
+            }
+        };
+        
+        if(SwingUtilities.isEventDispatchThread())
+        {
+            replayHistory.run();
+        }
+        else
+        {
+            SwingUtilities.invokeLater(replayHistory);
+        }
+    }
+    
+    /**
+     * Replace the document contents with the latest page of the given
+     * history. Older pages are only rendered when someone asks for them
+     * through {@link #loadOlderHistoryPage()}. This must be called from
+     * the AWT thread
+     * @param commandHistory
+     *          the history to replay
+     */
+    private void replayHistory(List<RHistoryItemType> commandHistory)
+    {
+        // 1st write out anything pending for the old project and then
+        // clear out the document contents
+        this.flushPendingText();
         this.clearHistory();
         
-        // now play back the command history
-        List<RHistoryItemType> commandHistory = newActiveProject.getRHistory();
-        synchronized(commandHistory)
+        // now play back the latest page of the command history
+        this.replayedHistory = commandHistory;
+        this.firstReplayedIndex = this.getPageStartIndex(
+                commandHistory.size(),
+                this.getPageCharLimit(0),
+                true);
+        int offset = 0;
+        for(int i = this.firstReplayedIndex; i < commandHistory.size(); i++)
+        {
+            offset = this.insertHistoryItem(commandHistory.get(i), offset);
+        }
+        this.replayedTextLength = offset;
+        this.appendPromptToDocument();
+    }
+    
+    /**
+     * Determine if there is history from the active project that hasn't
+     * been rendered into the document yet and that there's room under the
+     * {@link #getScrollbackLimit() scrollback limit} to render. This must
+     * be called from the AWT thread
+     * @return
+     *          true if there is older history to load
+     */
+    public boolean hasOlderHistory()
+    {
+        return this.getOlderPageStartIndex() < this.firstReplayedIndex;
+    }
+    
+    /**
+     * Render the next page of older history at the top of the document.
+     * This is meant to be called when the user scrolls to the top of the
+     * terminal and must be called from the AWT thread. A page is never
+     * loaded if it would push the document past the
+     * {@link #getScrollbackLimit() scrollback limit} since the next trim
+     * would just throw it away again
+     * @return
+     *          the number of characters inserted at the top of the
+     *          document (0 if there's no older history or no room for it)
+     */
+    public int loadOlderHistoryPage()
+    {
+        int pageEndIndex = this.firstReplayedIndex;
+        int pageStartIndex = this.getOlderPageStartIndex();
+        if(pageStartIndex >= pageEndIndex)
+        {
+            return 0;
+        }
+        
+        this.firstReplayedIndex = pageStartIndex;
+        int offset = 0;
+        for(int i = pageStartIndex; i < pageEndIndex; i++)
+        {
+            offset = this.insertHistoryItem(this.replayedHistory.get(i), offset);
+        }
+        this.replayedTextLength += offset;
+        
+        return offset;
+    }
+    
+    /**
+     * Get the start index for the next page of older history
+     * @return
+     *          the start index which is {@link #firstReplayedIndex} if
+     *          there's no older history or no room left for it
+     */
+    private int getOlderPageStartIndex()
+    {
+        if(this.firstReplayedIndex <= 0)
+        {
+            return this.firstReplayedIndex;
+        }
+        else
+        {
+            return this.getPageStartIndex(
+                    this.firstReplayedIndex,
+                    this.getPageCharLimit(this.attachedDocument.getLength()),
+                    false);
+        }
+    }
+    
+    /**
+     * Get the most chars that a page can add to a document of the given
+     * length without going over {@link #HISTORY_PAGE_CHAR_LIMIT} or the
+     * {@link #getScrollbackLimit() scrollback limit}
+     * @param documentLength
+     *          the current document length
+     * @return
+     *          the char limit for the page
+     */
+    private int getPageCharLimit(int documentLength)
+    {
+        int scrollbackLimit = this.getScrollbackLimit();
+        if(scrollbackLimit <= 0)
+        {
+            return HISTORY_PAGE_CHAR_LIMIT;
+        }
+        else
+        {
+            return Math.max(
+                    0,
+                    Math.min(
+                            HISTORY_PAGE_CHAR_LIMIT,
+                            scrollbackLimit - documentLength));
+        }
+    }
+    
+    /**
+     * Walk back from the given index in {@link #replayedHistory} for as
+     * many items as fit in the given number of chars
+     * @param pageEndIndex
+     *          the (exclusive) end index of the page
+     * @param charLimit
+     *          the most chars that the page can render to
+     * @param includeOversizedItem
+     *          if true the page gets the item just before the end index
+     *          even if that item alone doesn't fit
+     * @return
+     *          the (inclusive) start index of the page. this is equal to
+     *          the end index if nothing fits
+     */
+    private int getPageStartIndex(
+            int pageEndIndex,
+            int charLimit,
+            boolean includeOversizedItem)
+    {
+        int pageStartIndex = pageEndIndex;
+        long pageLength = 0L;
+        while(pageStartIndex > 0)
+        {
+            pageLength += getRenderedLength(
+                    this.replayedHistory.get(pageStartIndex - 1));
+            if(pageLength > charLimit &&
+               !(includeOversizedItem && pageStartIndex == pageEndIndex))
+            {
+                break;
+            }
+            pageStartIndex--;
+        }
+        
+        return pageStartIndex;
+    }
+    
+    /**
+     * Get the number of chars that
+     * {@link #insertHistoryItem(RHistoryItemType, int)} renders the given
+     * item to
+     * @param historyItem
+     *          the item
+     * @return
+     *          the rendered length
+     */
+    private static int getRenderedLength(RHistoryItemType historyItem)
+    {
+        String content = String.valueOf(historyItem.getContent());
+        switch(historyItem.getItemType())
         {
-            for(RHistoryItemType currHistoryItem: commandHistory)
+            case COMMAND:
+                return PROMPT.length() + content.length() + 1;
+            
+            case COMMENT:
+                return PROMPT.length() + content.length();
+            
+            case R_OUTPUT:
+                return content.length();
+            
+            default:
+                return 0;
+        }
+    }
+    
+    /**
+     * Render the given history item into the document
+     * @param historyItem
+     *          the item to render
+     * @param offset
+     *          the document offset to render at
+     * @return
+     *          the offset just past the rendered item
+     */
+    private int insertHistoryItem(RHistoryItemType historyItem, int offset)
+    {
+        switch(historyItem.getItemType())
+        {
+            case COMMAND:
             {
-                switch(currHistoryItem.getItemType())
-                {
-                    case COMMAND:
-                    {
-                        this.appendPromptToDocument();
-                        this.appendToAttachedDocument(
-                                currHistoryItem.getContent() + "\n",
-                                RDocumentStyle.CALLER_COMMAND_STYLE);
-                    }
-                    break;
+                offset = this.insertText(
+                        offset,
+                        PROMPT,
+                        RDocumentStyle.R_OUTPUT_STYLE);
+                offset = this.insertText(
+                        offset,
+                        historyItem.getContent() + "\n",
+                        RDocumentStyle.CALLER_COMMAND_STYLE);
+            }
+            break;
 
-                    case COMMENT:
-                    {
-                        this.appendPromptToDocument();
-                        this.appendToAttachedDocument(
-                                currHistoryItem.getContent(),
-                                RDocumentStyle.CALLER_COMMENT_STYLE);
-                    }
-                    break;
+            case COMMENT:
+            {
+                offset = this.insertText(
+                        offset,
+                        PROMPT,
+                        RDocumentStyle.R_OUTPUT_STYLE);
+                offset = this.insertText(
+                        offset,
+                        historyItem.getContent(),
+                        RDocumentStyle.CALLER_COMMENT_STYLE);
+            }
+            break;
 
-                    case R_OUTPUT:
-                    {
-                        this.appendToAttachedDocument(
-                                currHistoryItem.getContent(),
-                                RDocumentStyle.R_OUTPUT_STYLE);
-                    }
-                    break;
+            case R_OUTPUT:
+            {
+                offset = this.insertText(
+                        offset,
+                        historyItem.getContent(),
+                        RDocumentStyle.R_OUTPUT_STYLE);
+            }
+            break;
 
-                    default:
-                    {
-                        LOG.warning(
-                                "don't know how to deal with an R history " +
-                                "item of type: " +
-                                currHistoryItem.getItemType().name());
-                    }
-                    break;
-                }
+            default:
+            {
+                LOG.warning(
+                        "don't know how to deal with an R history " +
+                        "item of type: " +
+                        historyItem.getItemType().name());
             }
-            this.appendPromptToDocument();
+            break;
         }
+        
+        return offset;
+    }
+    
+    /**
+     * Insert text into the document
+     * @param offset
+     *          where to insert
+     * @param text
+     *          the text
+     * @param docStyle
+     *          the style
+     * @return
+     *          the offset just past the inserted text
+     */
+    private int insertText(int offset, String text, RDocumentStyle docStyle)
+    {
+        this.insertIntoAttachedDocument(offset, text, docStyle);
+        return offset + text.length();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getUntranscribedLength()
+    {
+        // replayed history is already saved with the project
+        return this.replayedTextLength;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void scrollbackTrimmed(int trimmedLength)
+    {
+        this.replayedTextLength = Math.max(
+                0,
+                this.replayedTextLength - trimmedLength);
+        
+        // the oldest rendered history is now in the transcript. rendering
+        // older pages above the trimmed gap would just be confusing
+        SwingUtilities.invokeLater(new Runnable()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            public void run()
+            {
+                ProjectAwareDocumentWritingRInterfaceListener.this.firstReplayedIndex = 0;
+            }
+        });
     }
 
     /**
-     * Get rid of all of the old text
+     * Get rid of all of the old text along with the transcript of what was
+     * trimmed from it
      */
     private void clearHistory()
     {
+        this.replayedTextLength = 0;
+        this.resetTranscript();
         try
         {
             this.attachedDocument.remove(
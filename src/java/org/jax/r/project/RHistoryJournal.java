@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jax.r.jaxbgenerated.ItemTypeType;
+import org.jax.r.jaxbgenerated.RHistoryItemType;
+
+/**
+ * An append only, memory mapped journal of R history items. Items are
+ * written sequentially into the mapped file as they're appended and
+ * {@link #flush()} commits them, so saving the history never has to
+ * rewrite the items that were saved before.
+ * <p>
+ * The file starts with a header of an int magic number, an int format
+ * version and a long holding the number of committed bytes (header
+ * included). Each item is an int item type length, the item type
+ * ({@link ItemTypeType#value()}) in UTF-8, an int content length and the
+ * content in UTF-8. {@link #flush()} forces the appended items to disk
+ * before it advances the committed length and then forces the header, so
+ * if the application crashes the reopened journal holds everything up to
+ * the last flush and nothing that was only partly written.
+ * </p>
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RHistoryJournal
+{
+    /**
+     * the magic number at the start of every journal ("RJHJ")
+     */
+    private static final int MAGIC_NUMBER = 0x524A484A;
+    
+    /**
+     * the file format version
+     */
+    private static final int FORMAT_VERSION = 1;
+    
+    /**
+     * the position of the committed length in the header
+     */
+    private static final int COMMITTED_LENGTH_POSITION = 8;
+    
+    /**
+     * the header size in bytes
+     */
+    private static final int HEADER_SIZE_BYTES = 16;
+    
+    /**
+     * the initial size of the mapping. it doubles as needed
+     */
+    private static final int INITIAL_MAPPED_SIZE = 1024 * 1024;
+    
+    private static final String ENCODING = "UTF-8";
+    
+    /**
+     * appended to the project file name to get the journal file name
+     */
+    private static final String JOURNAL_FILE_SUFFIX = ".history-journal";
+    
+    /**
+     * our JAXB object factory
+     */
+    private final org.jax.r.jaxbgenerated.ObjectFactory objectFactory =
+        new org.jax.r.jaxbgenerated.ObjectFactory();
+    
+    private final File file;
+    
+    private final RandomAccessFile randomAccessFile;
+    
+    private MappedByteBuffer buffer;
+    
+    /**
+     * the committed length as of the last {@link #flush()}. this is what's
+     * in the header
+     */
+    private int committedLength;
+    
+    /**
+     * the length including items appended since the last flush
+     */
+    private int appendedLength;
+    
+    private int itemCount;
+    
+    /**
+     * serializes {@link #flush()} and {@link #close()}. it's always taken
+     * before this journal's monitor
+     */
+    private final Object flushLock = new Object();
+    
+    /**
+     * incremented by {@link #clear()} so that a flush that was under way
+     * doesn't commit a length from before the clear
+     */
+    private int clearCount = 0;
+    
+    /**
+     * true once the journal is closed
+     */
+    private boolean closed = false;
+    
+    /**
+     * Open the given journal, creating it if it doesn't exist yet
+     * @param file
+     *          the journal file
+     * @throws IOException
+     *          if the file can't be opened or isn't a valid journal
+     */
+    public RHistoryJournal(File file) throws IOException
+    {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        try
+        {
+            long existingLength = this.randomAccessFile.length();
+            this.map((int)Math.max(
+                    INITIAL_MAPPED_SIZE,
+                    Math.min(existingLength, Integer.MAX_VALUE)));
+            
+            if(existingLength < HEADER_SIZE_BYTES)
+            {
+                // new journal
+                this.buffer.putInt(0, MAGIC_NUMBER);
+                this.buffer.putInt(4, FORMAT_VERSION);
+                this.committedLength = HEADER_SIZE_BYTES;
+                this.appendedLength = HEADER_SIZE_BYTES;
+                this.buffer.putLong(COMMITTED_LENGTH_POSITION, this.committedLength);
+                this.buffer.force();
+                this.itemCount = 0;
+            }
+            else
+            {
+                if(this.buffer.getInt(0) != MAGIC_NUMBER ||
+                   this.buffer.getInt(4) != FORMAT_VERSION)
+                {
+                    throw new IOException(
+                            "not a history journal: " + file.getAbsolutePath());
+                }
+                
+                long storedLength = this.buffer.getLong(COMMITTED_LENGTH_POSITION);
+                if(storedLength < HEADER_SIZE_BYTES || storedLength > existingLength)
+                {
+                    throw new IOException(
+                            "corrupt history journal: " + file.getAbsolutePath());
+                }
+                this.committedLength = (int)storedLength;
+                this.appendedLength = this.committedLength;
+                this.itemCount = this.readItems(null);
+            }
+        }
+        catch(IOException ex)
+        {
+            this.randomAccessFile.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Getter for the journal file
+     * @return the file
+     */
+    public File getFile()
+    {
+        return this.file;
+    }
+    
+    /**
+     * Get the number of items in the journal
+     * @return
+     *          the item count
+     */
+    public synchronized int getItemCount()
+    {
+        return this.itemCount;
+    }
+    
+    /**
+     * Append the given history item. It isn't committed until the next
+     * {@link #flush()}
+     * @param historyItem
+     *          the item to append
+     * @throws IOException
+     *          if the journal can't grow to fit the item
+     */
+    public synchronized void append(RHistoryItemType historyItem)
+            throws IOException
+    {
+        byte[] typeBytes = historyItem.getItemType().value().getBytes(ENCODING);
+        String content = historyItem.getContent();
+        byte[] contentBytes = content == null ?
+                              new byte[0] :
+                              content.getBytes(ENCODING);
+        
+        long newLength =
+            (long)this.appendedLength +
+            4 + typeBytes.length +
+            4 + contentBytes.length;
+        if(newLength > Integer.MAX_VALUE)
+        {
+            throw new IOException(
+                    "history journal is full: " + this.file.getAbsolutePath());
+        }
+        if(newLength > this.buffer.capacity())
+        {
+            long newCapacity = this.buffer.capacity();
+            while(newCapacity < newLength)
+            {
+                newCapacity *= 2L;
+            }
+            this.map((int)Math.min(newCapacity, Integer.MAX_VALUE));
+        }
+        
+        this.buffer.position(this.appendedLength);
+        this.buffer.putInt(typeBytes.length);
+        this.buffer.put(typeBytes);
+        this.buffer.putInt(contentBytes.length);
+        this.buffer.put(contentBytes);
+        
+        this.appendedLength = (int)newLength;
+        this.itemCount++;
+    }
+    
+    /**
+     * Commit everything appended so far. The items are forced to disk
+     * before the header's committed length is advanced (and then forced
+     * itself) so a crash can never leave the header pointing past data
+     * that didn't make it to disk. How much of the mapping each force
+     * actually writes is up to the OS.
+     * <p>
+     * The forces happen outside of this journal's monitor so that
+     * {@link #append(RHistoryItemType)} doesn't have to wait on the disk
+     * while another thread flushes. Items appended during the flush are
+     * committed by the next one
+     * </p>
+     */
+    public void flush()
+    {
+        synchronized(this.flushLock)
+        {
+            MappedByteBuffer flushBuffer;
+            int flushLength;
+            int flushClearCount;
+            synchronized(this)
+            {
+                if(this.closed || this.appendedLength == this.committedLength)
+                {
+                    return;
+                }
+                flushBuffer = this.buffer;
+                flushLength = this.appendedLength;
+                flushClearCount = this.clearCount;
+            }
+            
+            // a concurrent append can remap the file, but the old mapping
+            // still covers everything up to flushLength
+            flushBuffer.force();
+            
+            synchronized(this)
+            {
+                if(this.closed || this.clearCount != flushClearCount)
+                {
+                    // what we forced was thrown away in the meantime
+                    return;
+                }
+                flushBuffer = this.buffer;
+                flushBuffer.putLong(COMMITTED_LENGTH_POSITION, flushLength);
+                this.committedLength = flushLength;
+            }
+            
+            flushBuffer.force();
+        }
+    }
+    
+    /**
+     * Throw away all of the items in the journal
+     */
+    public synchronized void clear()
+    {
+        this.clearCount++;
+        this.committedLength = HEADER_SIZE_BYTES;
+        this.appendedLength = HEADER_SIZE_BYTES;
+        this.itemCount = 0;
+        this.buffer.putLong(COMMITTED_LENGTH_POSITION, this.committedLength);
+        this.buffer.force();
+    }
+    
+    /**
+     * Read all of the items in the journal
+     * @return
+     *          the items in the order they were appended
+     * @throws IOException
+     *          if the journal is corrupt
+     */
+    public synchronized List<RHistoryItemType> readItems() throws IOException
+    {
+        List<RHistoryItemType> items =
+            new ArrayList<RHistoryItemType>(this.itemCount);
+        this.readItems(items);
+        return items;
+    }
+    
+    /**
+     * Flush and close the journal
+     * @throws IOException
+     *          if the close fails
+     */
+    public void close() throws IOException
+    {
+        synchronized(this.flushLock)
+        {
+            this.flush();
+            synchronized(this)
+            {
+                this.closed = true;
+                this.randomAccessFile.close();
+            }
+        }
+    }
+    
+    /**
+     * Get the journal file that goes with the given project file
+     * @param projectFile
+     *          the project file
+     * @return
+     *          the journal file (which sits next to the project file)
+     */
+    public static File getJournalFile(File projectFile)
+    {
+        return new File(
+                projectFile.getAbsoluteFile().getParentFile(),
+                projectFile.getName() + JOURNAL_FILE_SUFFIX);
+    }
+    
+    /**
+     * Walk through the appended items
+     * @param items
+     *          the list to add the items to (or null to just count them)
+     * @return
+     *          the number of items
+     * @throws IOException
+     *          if the journal is corrupt
+     */
+    private int readItems(List<RHistoryItemType> items) throws IOException
+    {
+        int count = 0;
+        int position = HEADER_SIZE_BYTES;
+        while(position < this.appendedLength)
+        {
+            int typeLength = this.buffer.getInt(position);
+            position += 4;
+            String type = this.readString(position, typeLength);
+            position += typeLength;
+            
+            int contentLength = this.buffer.getInt(position);
+            position += 4;
+            if(items != null)
+            {
+                RHistoryItemType historyItem =
+                    this.objectFactory.createRHistoryItemType();
+                historyItem.setItemType(ItemTypeType.fromValue(type));
+                historyItem.setContent(this.readString(position, contentLength));
+                items.add(historyItem);
+            }
+            position += contentLength;
+            count++;
+        }
+        
+        if(position != this.appendedLength)
+        {
+            throw new IOException(
+                    "corrupt history journal: " + this.file.getAbsolutePath());
+        }
+        
+        return count;
+    }
+    
+    /**
+     * Read a UTF-8 string out of the buffer
+     * @param position
+     *          the start position
+     * @param length
+     *          the length in bytes
+     * @return
+     *          the string
+     * @throws IOException
+     *          if the length runs past the committed data
+     */
+    private String readString(int position, int length) throws IOException
+    {
+        if(length < 0 || position + length > this.appendedLength)
+        {
+            throw new IOException(
+                    "corrupt history journal: " + this.file.getAbsolutePath());
+        }
+        
+        byte[] bytes = new byte[length];
+        ByteBuffer view = this.buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+        
+        try
+        {
+            return new String(bytes, ENCODING);
+        }
+        catch(UnsupportedEncodingException ex)
+        {
+            // UTF-8 is always supported
+            throw new IOException(ex.getMessage());
+        }
+    }
+    
+    /**
+     * (Re)map the file with the given size
+     * @param size
+     *          the size to map
+     * @throws IOException
+     *          if the mapping fails
+     */
+    private void map(int size) throws IOException
+    {
+        if(this.buffer != null)
+        {
+            this.buffer.force();
+        }
+        this.buffer = this.randomAccessFile.getChannel().map(
+                FileChannel.MapMode.READ_WRITE,
+                0,
+                size);
+    }
+}
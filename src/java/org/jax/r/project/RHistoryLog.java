@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2009 The Jackson Laboratory
+ * 
+ * This software was developed by Gary Churchill's Lab at The Jackson
+ * Laboratory (see http://research.jax.org/faculty/churchill).
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jax.r.project;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.jax.r.jaxbgenerated.RHistoryItemType;
+
+/**
+ * An append only list of R history items. Items are stored in fixed size
+ * segments that are never moved once they're allocated, so appending never
+ * copies existing items and a snapshot is just the current segment table
+ * plus the current size. Snapshots are immutable and reading them never
+ * takes a lock or blocks the thread that's appending.
+ * <p>
+ * Only one thread may append at a time (in {@link RProject} all appends
+ * are already serialized) but any number of threads can take and read
+ * snapshots concurrently with the appends.
+ * </p>
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class RHistoryLog
+{
+    /**
+     * log base 2 of the segment size
+     */
+    private static final int SEGMENT_SHIFT = 10;
+    
+    /**
+     * the number of items in each segment
+     */
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    
+    /**
+     * for finding an item's position within its segment
+     */
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    
+    /**
+     * the segment table. this is replaced (never modified in place) when it
+     * needs to grow
+     */
+    private volatile RHistoryItemType[][] segments =
+        new RHistoryItemType[1][];
+    
+    /**
+     * the number of items. this is written after the item itself so a
+     * reader that sees the size also sees all of the items before it
+     */
+    private volatile int size = 0;
+    
+    /**
+     * Constructor for an empty log
+     */
+    public RHistoryLog()
+    {
+    }
+    
+    /**
+     * Constructor
+     * @param initialItems
+     *          the items to start with
+     */
+    public RHistoryLog(Collection<RHistoryItemType> initialItems)
+    {
+        for(RHistoryItemType item: initialItems)
+        {
+            this.append(item);
+        }
+    }
+    
+    /**
+     * Append the given item. This must not be called by more than one
+     * thread at a time
+     * @param item
+     *          the item to append
+     */
+    public void append(RHistoryItemType item)
+    {
+        int index = this.size;
+        int segmentIndex = index >>> SEGMENT_SHIFT;
+        
+        RHistoryItemType[][] currSegments = this.segments;
+        if(segmentIndex == currSegments.length)
+        {
+            // grow the table. the segments themselves are shared
+            RHistoryItemType[][] newSegments =
+                new RHistoryItemType[currSegments.length * 2][];
+            System.arraycopy(
+                    currSegments, 0,
+                    newSegments, 0,
+                    currSegments.length);
+            currSegments = newSegments;
+        }
+        if(currSegments[segmentIndex] == null)
+        {
+            currSegments[segmentIndex] = new RHistoryItemType[SEGMENT_SIZE];
+        }
+        currSegments[segmentIndex][index & SEGMENT_MASK] = item;
+        
+        // publish. the table has to be visible before the size
+        this.segments = currSegments;
+        this.size = index + 1;
+    }
+    
+    /**
+     * Get the number of items appended so far
+     * @return
+     *          the size
+     */
+    public int size()
+    {
+        return this.size;
+    }
+    
+    /**
+     * Get an immutable snapshot of the items appended so far. This is
+     * cheap no matter how many items there are
+     * @return
+     *          the snapshot
+     */
+    public List<RHistoryItemType> snapshot()
+    {
+        // read the size 1st so that the table we read is at least as new
+        int currSize = this.size;
+        return new Snapshot(this.segments, currSize);
+    }
+    
+    /**
+     * An immutable view of the first N items of the log
+     */
+    private static final class Snapshot
+    extends AbstractList<RHistoryItemType>
+    implements RandomAccess
+    {
+        private final RHistoryItemType[][] segments;
+        
+        private final int size;
+        
+        /**
+         * Constructor
+         * @param segments
+         *          the segment table
+         * @param size
+         *          the snapshot size
+         */
+        public Snapshot(RHistoryItemType[][] segments, int size)
+        {
+            this.segments = segments;
+            this.size = size;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public RHistoryItemType get(int index)
+        {
+            if(index < 0 || index >= this.size)
+            {
+                throw new IndexOutOfBoundsException(
+                        "index: " + index + ", size: " + this.size);
+            }
+            
+            return this.segments[index >>> SEGMENT_SHIFT][index & SEGMENT_MASK];
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size()
+        {
+            return this.size;
+        }
+    }
+}
@@ -20,9 +20,15 @@
 
 package org.jax.r.project;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.jax.r.RCommand;
 import org.jax.r.jaxbgenerated.ItemTypeType;
@@ -30,6 +36,7 @@ import org.jax.r.jaxbgenerated.RHistoryItemType;
 import org.jax.r.jaxbgenerated.RProjectMetadataType;
 import org.jax.r.jriutilities.RInterface;
 import org.jax.r.jriutilities.RInterfaceListener;
+import org.jax.r.jriutilities.RScriptExpressionCommand;
 import org.jax.r.jriutilities.SilentRCommand;
 import org.jax.util.project.Project;
 import org.rosuda.JRI.REXP;
@@ -40,6 +47,30 @@ import org.rosuda.JRI.REXP;
  */
 public abstract class RProject extends Project
 {
+    /**
+     * our logger
+     */
+    private static final Logger LOG = Logger.getLogger(
+            RProject.class.getName());
+    
+    /**
+     * commits history journals off of the R thread so that commands don't
+     * have to wait on the disk
+     */
+    private static final ExecutorService HISTORY_JOURNAL_FLUSHER =
+        Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            /**
+             * {@inheritDoc}
+             */
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "history-journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    
     /**
      * our JAXB object factory
      */
@@ -49,13 +80,58 @@ public abstract class RProject extends Project
     /**
      * the history for this project
      */
-    private final List<RHistoryItemType> rHistory;
+    private final RHistoryLog rHistory;
     
     /**
      * the R interface
      */
     private final RInterface rInterface;
     
+    /**
+     * guards appending to the history and the journal together so that
+     * they stay in the same order
+     */
+    private final Object historyRecordingLock = new Object();
+    
+    /**
+     * @see #attachHistoryJournal(RHistoryJournal)
+     */
+    private RHistoryJournal historyJournal = null;
+    
+    /**
+     * true while a journal flush is queued but hasn't started yet. commands
+     * that finish in the meantime are committed by that same flush
+     */
+    private final AtomicBoolean historyJournalFlushScheduled =
+        new AtomicBoolean(false);
+    
+    /**
+     * the flush that gets queued up on {@link #HISTORY_JOURNAL_FLUSHER}
+     */
+    private final Runnable historyJournalFlush = new Runnable()
+    {
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            RProject.this.historyJournalFlushScheduled.set(false);
+            RProject.this.saveHistoryJournal();
+        }
+    };
+    
+    /**
+     * R output that hasn't been recorded in the history yet. R hands us
+     * output in lots of small fragments so we collect all of the output
+     * for a command here and record it as a single item
+     */
+    private final StringBuilder pendingOutput = new StringBuilder();
+    
+    /**
+     * the command that {@link #pendingOutput} belongs to
+     */
+    private RCommand pendingOutputCommand = null;
+    
     /**
      * for recording the R history when we save the project
      */
@@ -77,7 +153,13 @@ public abstract class RProject extends Project
                 RCommand command,
                 REXP result)
         {
-            // don't care
+            RProject.this.commandCompleted(command);
+            if(!(command instanceof SilentRCommand))
+            {
+                // commit the command and its output to the journal so
+                // that it survives a crash
+                RProject.this.scheduleHistoryJournalFlush();
+            }
         }
 
         /**
@@ -91,9 +173,10 @@ public abstract class RProject extends Project
             {
                 RHistoryItemType historyItem =
                     RProject.this.objectFactory.createRHistoryItemType();
-                historyItem.setContent(command.getCommandText());
+                historyItem.setContent(
+                        RScriptExpressionCommand.getDisplayText(command));
                 historyItem.setItemType(ItemTypeType.COMMAND);
-                RProject.this.rHistory.add(historyItem);
+                RProject.this.recordHistoryItem(historyItem);
             }
         }
 
@@ -107,7 +190,7 @@ public abstract class RProject extends Project
                 RProject.this.objectFactory.createRHistoryItemType();
             historyItem.setContent(comment);
             historyItem.setItemType(ItemTypeType.COMMENT);
-            RProject.this.rHistory.add(historyItem);
+            RProject.this.recordHistoryItem(historyItem);
         }
 
         /**
@@ -131,11 +214,7 @@ public abstract class RProject extends Project
         {
             if(!(activeCommand instanceof SilentRCommand))
             {
-                RHistoryItemType historyItem =
-                    RProject.this.objectFactory.createRHistoryItemType();
-                historyItem.setContent(output);
-                historyItem.setItemType(ItemTypeType.R_OUTPUT);
-                RProject.this.rHistory.add(historyItem);
+                RProject.this.recordOutput(output, activeCommand);
             }
         }
     };
@@ -151,9 +230,7 @@ public abstract class RProject extends Project
     {
         super(projectMetadata.getProjectName());
         
-        this.rHistory = Collections.synchronizedList(
-                new ArrayList<RHistoryItemType>(
-                        projectMetadata.getRHistoryItem()));
+        this.rHistory = new RHistoryLog(projectMetadata.getRHistoryItem());
         this.rInterface = rInterface;
         this.rInterface.addRInterfaceListener(this.historyRecorder);
     }
@@ -167,38 +244,371 @@ public abstract class RProject extends Project
     {
         super(null);
         
-        this.rHistory = Collections.synchronizedList(
-                new ArrayList<RHistoryItemType>());
+        this.rHistory = new RHistoryLog();
         this.rInterface = rInterface;
         this.rInterface.addRInterfaceListener(this.historyRecorder);
     }
     
     /**
-     * detach the project from the R interface
+     * detach the project from the R interface. The history journal is
+     * closed but kept so that anything that wasn't saved can still be
+     * recovered. Use {@link #discardHistoryJournal()} on a clean close
      */
     public void detatchProject()
     {
         this.rInterface.removeRInterfaceListener(this.historyRecorder);
+        
+        try
+        {
+            this.attachHistoryJournal(null);
+        }
+        catch(IOException ex)
+        {
+            LOG.log(Level.WARNING,
+                    "failed to close the history journal",
+                    ex);
+        }
+    }
+    
+    /**
+     * Open the history journal that goes with the given project file (see
+     * {@link RHistoryJournal#getJournalFile(File)}) and attach it. This
+     * recovers any history that was journaled after the project file was
+     * last saved, which only happens if the application didn't get to
+     * close cleanly. If the journal can't be opened the project works
+     * without one
+     * @param projectFile
+     *          the file that the project was loaded from
+     */
+    public void openHistoryJournal(File projectFile)
+    {
+        File journalFile = RHistoryJournal.getJournalFile(projectFile);
+        try
+        {
+            this.attachHistoryJournal(new RHistoryJournal(journalFile));
+        }
+        catch(IOException ex)
+        {
+            LOG.log(Level.WARNING,
+                    "failed to open the history journal: " +
+                    journalFile.getAbsolutePath(),
+                    ex);
+        }
+    }
+    
+    /**
+     * Close the attached history journal and delete its file. Call this
+     * when the project is closed cleanly: by then the user has either
+     * saved the project file or chosen to throw the unsaved history away,
+     * so the journal must not bring it back the next time the project is
+     * loaded. Does nothing if no journal is attached
+     */
+    public void discardHistoryJournal()
+    {
+        RHistoryJournal journal;
+        synchronized(this.historyRecordingLock)
+        {
+            journal = this.historyJournal;
+            this.historyJournal = null;
+        }
+        
+        if(journal != null)
+        {
+            journal.clear();
+            try
+            {
+                journal.close();
+            }
+            catch(IOException ex)
+            {
+                LOG.log(Level.WARNING,
+                        "failed to close the history journal",
+                        ex);
+            }
+            
+            if(!journal.getFile().delete())
+            {
+                LOG.warning(
+                        "failed to delete the history journal: " +
+                        journal.getFile().getAbsolutePath());
+            }
+        }
     }
     
     /**
      * Gets the R history which includes all commands that were evaluated,
      * and the output that was produced from the commands.
      * @return
-     *          the rHistory (returns a copy for thread safety and
-     *          data integrity)
+     *          an immutable snapshot of the history. Taking the snapshot is
+     *          cheap, doesn't copy anything and doesn't block the thread
+     *          that records history. Items recorded after the snapshot was
+     *          taken won't show up in it, and neither will the output of a
+     *          command that is still running (its output is recorded as a
+     *          single item once it finishes)
      */
     public List<RHistoryItemType> getRHistory()
     {
-        // make a copy for thread safety
-        final List<RHistoryItemType> copyOfRHistory;
-        synchronized(this.rHistory)
+        return this.rHistory.snapshot();
+    }
+    
+    /**
+     * Attach a journal that all history items get appended to as they're
+     * recorded. Any journal that is already attached is closed. The journal
+     * is reconciled with the history first:
+     * <ul>
+     * <li>
+     * if the journal holds the first part of the history (for example
+     * because it was just created) the missing tail is appended to it
+     * </li>
+     * <li>
+     * if the history is the first part of the journal (the project was
+     * last saved before the journaled items, eg. because the application
+     * crashed) the extra journaled items are recovered into the history
+     * </li>
+     * <li>
+     * otherwise the journal belongs to something else and it's rewritten
+     * from the history
+     * </li>
+     * </ul>
+     * @param historyJournal
+     *          the journal to attach or null to just close the current one
+     * @throws IOException
+     *          if we fail to read or update the journal
+     */
+    public void attachHistoryJournal(RHistoryJournal historyJournal)
+            throws IOException
+    {
+        RHistoryJournal oldJournal;
+        synchronized(this.historyRecordingLock)
         {
-            copyOfRHistory = new ArrayList<RHistoryItemType>(
-                    this.rHistory);
+            oldJournal = this.historyJournal;
+            this.historyJournal = null;
+            
+            if(historyJournal != null)
+            {
+                List<RHistoryItemType> history = this.rHistory.snapshot();
+                List<RHistoryItemType> journaledItems = historyJournal.readItems();
+                int commonCount = Math.min(history.size(), journaledItems.size());
+                int matchingCount = 0;
+                while(matchingCount < commonCount &&
+                      RProject.historyItemsEqual(
+                              history.get(matchingCount),
+                              journaledItems.get(matchingCount)))
+                {
+                    matchingCount++;
+                }
+                
+                if(matchingCount == journaledItems.size())
+                {
+                    // the journal is behind the history
+                    for(int i = matchingCount; i < history.size(); i++)
+                    {
+                        historyJournal.append(history.get(i));
+                    }
+                }
+                else if(matchingCount == history.size())
+                {
+                    // the journal is ahead of the history
+                    LOG.info(
+                            "recovering " + (journaledItems.size() - matchingCount) +
+                            " history items from the journal");
+                    for(int i = matchingCount; i < journaledItems.size(); i++)
+                    {
+                        this.appendHistoryItem(journaledItems.get(i));
+                    }
+                }
+                else
+                {
+                    LOG.warning(
+                            "the history journal doesn't match the project " +
+                            "history. rewriting it: " +
+                            historyJournal.getFile().getAbsolutePath());
+                    historyJournal.clear();
+                    for(RHistoryItemType historyItem: history)
+                    {
+                        historyJournal.append(historyItem);
+                    }
+                }
+                historyJournal.flush();
+            }
+            
+            this.historyJournal = historyJournal;
         }
         
-        return copyOfRHistory;
+        if(oldJournal != null && oldJournal != historyJournal)
+        {
+            oldJournal.close();
+        }
+    }
+    
+    /**
+     * Determine if the two history items have the same type and content
+     * @param item1
+     *          the 1st item
+     * @param item2
+     *          the 2nd item
+     * @return
+     *          true if they match
+     */
+    private static boolean historyItemsEqual(
+            RHistoryItemType item1,
+            RHistoryItemType item2)
+    {
+        if(item1.getItemType() != item2.getItemType())
+        {
+            return false;
+        }
+        else if(item1.getContent() == null)
+        {
+            return item2.getContent() == null;
+        }
+        else
+        {
+            return item1.getContent().equals(item2.getContent());
+        }
+    }
+    
+    /**
+     * Getter for the attached history journal
+     * @return
+     *          the journal or null if there isn't one
+     */
+    public RHistoryJournal getHistoryJournal()
+    {
+        synchronized(this.historyRecordingLock)
+        {
+            return this.historyJournal;
+        }
+    }
+    
+    /**
+     * Save the history incrementally by committing the attached journal.
+     * Only the items appended since the last commit are written. This
+     * is scheduled off of the R thread after every command that the user
+     * can see. Does nothing if no journal is attached
+     */
+    public void saveHistoryJournal()
+    {
+        RHistoryJournal journal;
+        synchronized(this.historyRecordingLock)
+        {
+            journal = this.historyJournal;
+        }
+        
+        if(journal != null)
+        {
+            journal.flush();
+        }
+    }
+    
+    /**
+     * Queue up a {@link #saveHistoryJournal()} on the flusher thread unless
+     * one is already waiting there
+     */
+    private void scheduleHistoryJournalFlush()
+    {
+        if(this.historyJournalFlushScheduled.compareAndSet(false, true))
+        {
+            HISTORY_JOURNAL_FLUSHER.execute(this.historyJournalFlush);
+        }
+    }
+    
+    /**
+     * Record the given item in the history (and the journal if there is one)
+     * @param historyItem
+     *          the item
+     */
+    private void recordHistoryItem(RHistoryItemType historyItem)
+    {
+        synchronized(this.historyRecordingLock)
+        {
+            // keep the output ahead of whatever follows it
+            this.recordPendingOutput();
+            this.appendHistoryItem(historyItem);
+        }
+    }
+    
+    /**
+     * Collect a fragment of R output. Consecutive fragments for the same
+     * command end up in a single history item
+     * @param output
+     *          the output fragment
+     * @param activeCommand
+     *          the command that produced it
+     */
+    private void recordOutput(String output, RCommand activeCommand)
+    {
+        synchronized(this.historyRecordingLock)
+        {
+            if(activeCommand != this.pendingOutputCommand)
+            {
+                this.recordPendingOutput();
+                this.pendingOutputCommand = activeCommand;
+            }
+            this.pendingOutput.append(output);
+        }
+    }
+    
+    /**
+     * Called when R finishes a command. Any output that the command
+     * produced is recorded now
+     * @param command
+     *          the command that finished
+     */
+    private void commandCompleted(RCommand command)
+    {
+        synchronized(this.historyRecordingLock)
+        {
+            if(command == this.pendingOutputCommand)
+            {
+                this.recordPendingOutput();
+            }
+        }
+    }
+    
+    /**
+     * Record the pending output as a history item. The caller must hold
+     * {@link #historyRecordingLock}
+     */
+    private void recordPendingOutput()
+    {
+        if(this.pendingOutput.length() > 0)
+        {
+            RHistoryItemType historyItem =
+                this.objectFactory.createRHistoryItemType();
+            historyItem.setContent(this.pendingOutput.toString());
+            historyItem.setItemType(ItemTypeType.R_OUTPUT);
+            this.pendingOutput.setLength(0);
+            this.appendHistoryItem(historyItem);
+        }
+        this.pendingOutputCommand = null;
+    }
+    
+    /**
+     * Append the item to the history and the journal. The caller must hold
+     * {@link #historyRecordingLock}
+     * @param historyItem
+     *          the item
+     */
+    private void appendHistoryItem(RHistoryItemType historyItem)
+    {
+        this.rHistory.append(historyItem);
+        
+        if(this.historyJournal != null)
+        {
+            try
+            {
+                this.historyJournal.append(historyItem);
+            }
+            catch(IOException ex)
+            {
+                LOG.log(Level.SEVERE,
+                        "failed to append to the history journal. " +
+                        "detaching it from the project",
+                        ex);
+                this.historyJournal = null;
+            }
+        }
     }
 
     /**